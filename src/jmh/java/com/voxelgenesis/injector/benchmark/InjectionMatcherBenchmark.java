@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.benchmark;
+
+import com.voxelgenesis.injector.target.InjectionTarget;
+import com.voxelgenesis.injector.target.match.InjectionMatcher;
+import com.voxelgenesis.injector.target.match.MatchedStatements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.spongepowered.despector.ast.type.MethodEntry;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching against a decompiled method, which only reads the method so the
+ * same method is reused for every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InjectionMatcherBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    @Param({"1", "4", "16"})
+    public int depth;
+
+    @Param({"1", "16"})
+    public int injections;
+
+    private MethodEntry method;
+    private InjectionTarget target;
+    private InjectionMatcher matcher;
+
+    @Setup
+    public void setup() {
+        this.method = SyntheticClasses.method(SyntheticClasses.decompile(SyntheticClasses.target(this.size, this.depth, this.injections)),
+                SyntheticClasses.TARGET_METHOD);
+        this.target = SyntheticClasses.typeInjector(this.injections).getTargets()
+                .get(SyntheticClasses.TARGET_METHOD + SyntheticClasses.TARGET_DESC);
+        this.matcher = this.target.getInjections().get(0);
+    }
+
+    @Benchmark
+    public MatchedStatements matchOne() {
+        return this.matcher.match(this.method);
+    }
+
+    @Benchmark
+    public List<MatchedStatements> matchTarget() {
+        return this.target.match(this.method);
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.benchmark;
+
+import com.voxelgenesis.injector.target.TypeInjector;
+import com.voxelgenesis.injector.target.match.InjectionMatcher;
+import com.voxelgenesis.injector.target.match.modifier.BodyTemplate;
+import com.voxelgenesis.injector.target.match.modifier.StatementInsertModifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.spongepowered.despector.ast.Locals.LocalInstance;
+import org.spongepowered.despector.ast.stmt.Statement;
+import org.spongepowered.despector.ast.type.MethodEntry;
+import org.spongepowered.despector.transform.matcher.MatchContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translating the locals and body of an injector into a target. Each
+ * translation adds the injector's temporaries to the target's locals, so the
+ * target is decompiled afresh for every iteration to keep that growth
+ * bounded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocalTranslationBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private byte[] target_data;
+    private MethodEntry injector;
+    private InjectionMatcher matcher;
+    private BodyTemplate<List<Statement>> body;
+
+    private MethodEntry target;
+    private MatchContext match;
+
+    @Setup
+    public void setup() {
+        this.target_data = SyntheticClasses.target(this.size, 1, 1);
+        TypeInjector type = SyntheticClasses.typeInjector(1);
+        this.injector = SyntheticClasses.method(type.getInjector(), "inject0");
+        this.matcher = type.getTargets().get(SyntheticClasses.TARGET_METHOD + SyntheticClasses.TARGET_DESC).getInjections().get(0);
+        List<Statement> insns = this.injector.getInstructions().getStatements();
+        this.body = BodyTemplate.ofStatements(insns.subList(0, insns.size() - 1));
+    }
+
+    @Setup(Level.Iteration)
+    public void setupTarget() {
+        this.target = SyntheticClasses.method(SyntheticClasses.decompile(this.target_data), SyntheticClasses.TARGET_METHOD);
+        this.match = this.matcher.match(this.target).getMatchContext();
+    }
+
+    @Benchmark
+    public Map<LocalInstance, LocalInstance> buildLocalTranslation() {
+        return StatementInsertModifier.buildLocalTranslation(this.target, this.injector, this.match, this.size / 2);
+    }
+
+    @Benchmark
+    public List<Statement> instantiateBody() {
+        return this.body.instantiate(StatementInsertModifier.buildLocalTranslation(this.target, this.injector, this.match, this.size / 2));
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.benchmark;
+
+import com.voxelgenesis.injector.target.match.CompiledMatcher;
+import com.voxelgenesis.injector.target.match.InjectionMatcher;
+import com.voxelgenesis.injector.target.parse.MatchParser;
+import com.voxelgenesis.injector.target.parse.MatcherCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.spongepowered.despector.ast.type.MethodEntry;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MatchParserBenchmark {
+
+    /**
+     * Builds a matcher of the given number of statements, inserting before
+     * the last one.
+     */
+    static String matcher(int statements) {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < statements - 1; i++) {
+            str.append("java/lang/System.out.println(\"line").append(i).append("\"); ");
+        }
+        return str.append(SyntheticClasses.matcher(0)).toString();
+    }
+
+    @Param({"1", "4", "16"})
+    public int statements;
+
+    private String matcher;
+    private MethodEntry injector;
+
+    @Setup
+    public void setup() {
+        this.matcher = matcher(this.statements);
+        this.injector = SyntheticClasses.method(SyntheticClasses.typeInjector(1).getInjector(), "inject0");
+    }
+
+    @Benchmark
+    public CompiledMatcher parse() {
+        return new MatchParser(this.matcher).parse();
+    }
+
+    /**
+     * Compiling a matcher as registering an injector does, where every
+     * compile after the first is a cache hit.
+     */
+    @Benchmark
+    public InjectionMatcher compileCached() {
+        return MatcherCache.get(this.matcher, Collections.emptyMap()).bind(this.injector);
+    }
+
+}
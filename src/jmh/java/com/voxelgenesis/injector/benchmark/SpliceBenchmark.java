@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.benchmark;
+
+import com.voxelgenesis.injector.target.InjectionTarget;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.spongepowered.despector.ast.type.MethodEntry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying every point of a target to one large block. Applying modifies the
+ * method, so a fresh copy is decompiled before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpliceBenchmark {
+
+    @Param({"1000", "5000"})
+    public int size;
+
+    @Param({"8", "32"})
+    public int injections;
+
+    private byte[] target_data;
+    private InjectionTarget target;
+
+    private MethodEntry method;
+
+    @Setup
+    public void setup() {
+        this.target_data = SyntheticClasses.target(this.size, 1, this.injections);
+        this.target = SyntheticClasses.typeInjector(this.injections).getTargets()
+                .get(SyntheticClasses.TARGET_METHOD + SyntheticClasses.TARGET_DESC);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupMethod() {
+        this.method = SyntheticClasses.method(SyntheticClasses.decompile(this.target_data), SyntheticClasses.TARGET_METHOD);
+    }
+
+    @Benchmark
+    public MethodEntry apply() {
+        this.target.apply(this.method);
+        return this.method;
+    }
+
+}
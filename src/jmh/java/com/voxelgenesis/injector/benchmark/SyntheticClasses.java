@@ -0,0 +1,213 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.benchmark;
+
+import com.voxelgenesis.injector.cache.TransformCache;
+import com.voxelgenesis.injector.target.TypeInjector;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.spongepowered.despector.ast.SourceSet;
+import org.spongepowered.despector.ast.type.MethodEntry;
+import org.spongepowered.despector.ast.type.TypeEntry;
+import org.spongepowered.despector.decompiler.Decompilers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Generates the target and injector classes that the benchmarks run over.
+ *
+ * <p>The target has a single static method {@link #TARGET_METHOD} made of
+ * {@code size} print statements, nested {@code depth} levels deep in null
+ * checks of its parameter. Some of the statements print a marker constant
+ * which the generated injector's matchers anchor on, each inserting a short
+ * statement sequence with its own local before the marked statement.</p>
+ */
+public final class SyntheticClasses {
+
+    public static final String TARGET = "com/voxelgenesis/injector/benchmark/generated/Target";
+    public static final String TARGET_NAME = TARGET.replace('/', '.');
+    public static final String INJECTOR = "com/voxelgenesis/injector/benchmark/generated/TargetInjector";
+    public static final String INJECTOR_NAME = INJECTOR.replace('/', '.');
+    public static final String TARGET_METHOD = "run";
+    public static final String TARGET_DESC = "(Ljava/lang/String;)V";
+
+    public static String marker(int index) {
+        return "marker" + index;
+    }
+
+    /**
+     * Gets the matcher that inserts before the print of the given marker.
+     */
+    public static String matcher(int index) {
+        return "$$; java/lang/System.out.println(\"" + marker(index) + "\");";
+    }
+
+    /**
+     * Gets the index of the statement printing the given marker, spreading
+     * the markers evenly over the method.
+     */
+    private static int markerPosition(int size, int injections, int index) {
+        int spacing = size / injections;
+        return index * spacing + spacing / 2;
+    }
+
+    public static byte[] target(int size, int depth, int injections) {
+        if (injections > size) {
+            throw new IllegalArgumentException("More injections than statements");
+        }
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, TARGET, null, "java/lang/Object", null);
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, TARGET_METHOD, TARGET_DESC, null, null);
+        mv.visitCode();
+        Label start = new Label();
+        mv.visitLabel(start);
+        Label[] ends = new Label[depth];
+        int per_level = Math.max(1, size / depth);
+        int level = 0;
+        int next_marker = 0;
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && i % per_level == 0 && level < depth - 1) {
+                ends[level] = new Label();
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitJumpInsn(Opcodes.IFNULL, ends[level]);
+                level++;
+            }
+            String value = "line" + i;
+            if (next_marker < injections && i == markerPosition(size, injections, next_marker)) {
+                value = marker(next_marker++);
+            }
+            mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+            mv.visitLdcInsn(value);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        }
+        for (int i = level - 1; i >= 0; i--) {
+            mv.visitLabel(ends[i]);
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        Label end = new Label();
+        mv.visitLabel(end);
+        mv.visitLocalVariable("s", "Ljava/lang/String;", null, start, end, 0);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    public static byte[] injector(int injections) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, INJECTOR, null, "java/lang/Object", null);
+        AnnotationVisitor injector = cw.visitAnnotation("Lcom/voxelgenesis/injector/Injector;", true);
+        injector.visit("value", Type.getObjectType(TARGET));
+        injector.visitEnd();
+
+        for (int i = 0; i < injections; i++) {
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "inject" + i, "()V", null, null);
+            AnnotationVisitor inject = mv.visitAnnotation("Lcom/voxelgenesis/injector/Inject;", true);
+            inject.visit("target", TARGET_METHOD + TARGET_DESC);
+            inject.visit("matcher", matcher(i));
+            inject.visitEnd();
+            mv.visitCode();
+            Label start = new Label();
+            mv.visitLabel(start);
+            mv.visitLdcInsn("injected" + i);
+            mv.visitVarInsn(Opcodes.ASTORE, 0);
+            mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+            mv.visitInsn(Opcodes.RETURN);
+            Label end = new Label();
+            mv.visitLabel(end);
+            mv.visitLocalVariable("msg", "Ljava/lang/String;", null, start, end, 0);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    public static TypeEntry decompile(byte[] data) {
+        try {
+            TypeEntry type = Decompilers.JAVA.decompile(new ByteArrayInputStream(data), new SourceSet());
+            Decompilers.JAVA.flushTasks();
+            return type;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static TypeEntry decompileInjector(byte[] data) {
+        try {
+            TypeEntry type = Decompilers.WILD.decompile(new ByteArrayInputStream(data), new SourceSet());
+            Decompilers.WILD.flushTasks();
+            return type;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds a type injector the same way registering it with the injection
+     * manager would, without registering it.
+     */
+    public static TypeInjector typeInjector(int injections) {
+        byte[] data = injector(injections);
+        TypeEntry type = decompileInjector(data);
+        ClassNode node = new ClassNode();
+        new ClassReader(data).accept(node, ClassReader.SKIP_FRAMES);
+        return new TypeInjector(TARGET_NAME, type, node, TransformCache.hash(data));
+    }
+
+    public static MethodEntry method(TypeEntry type, String name) {
+        for (MethodEntry mth : type.getMethods()) {
+            if (mth.getName().equals(name)) {
+                return mth;
+            }
+        }
+        throw new IllegalStateException("No method " + name + " in " + type.getName());
+    }
+
+    private SyntheticClasses() {
+    }
+
+}
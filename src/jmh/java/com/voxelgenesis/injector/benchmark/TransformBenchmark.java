@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.benchmark;
+
+import com.voxelgenesis.injector.InjectionManager;
+import com.voxelgenesis.injector.config.ConfigManager;
+import com.voxelgenesis.injector.config.InjectorConfig;
+import com.voxelgenesis.injector.launch.InjectorTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The transformer as the class loader sees it once the game is launched. The
+ * injection manager is a singleton which each setup seals after registering
+ * its injector, as the tweaker does at launch, which is fine as every trial
+ * runs in its own forked VM.
+ */
+public class TransformBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Target {
+
+        @Param({"100", "1000"})
+        public int size;
+
+        @Param({"1", "8"})
+        public int injections;
+
+        @Param({"true", "false"})
+        public boolean partial;
+
+        InjectorTransformer transformer;
+        byte[] data;
+
+        @Setup
+        public void setup() throws IOException {
+            // Caching would turn every invocation after the first into a
+            // lookup of the first result.
+            InjectorConfig config = ConfigManager.getConfig();
+            config.cache.enabled = false;
+            config.cache.memory_enabled = false;
+            config.transform.partial_decompile = this.partial;
+            InjectionManager.get().addInjector(SyntheticClasses.INJECTOR_NAME, SyntheticClasses.injector(this.injections));
+            InjectionManager.get().seal();
+            this.transformer = new InjectorTransformer();
+            this.data = SyntheticClasses.target(this.size, 1, this.injections);
+            // A failed transform is logged and passes the class through
+            // unchanged, which would quietly benchmark the failure path.
+            if (this.transformer.transform(SyntheticClasses.TARGET_NAME, SyntheticClasses.TARGET_NAME, this.data) == this.data) {
+                throw new IllegalStateException("Synthetic target was not transformed");
+            }
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class PassThrough {
+
+        private static final int NAMES = 1024;
+
+        InjectorTransformer transformer;
+        String[] names;
+        byte[] data;
+        int next;
+
+        @Setup
+        public void setup() throws IOException {
+            InjectionManager.get().addInjector(SyntheticClasses.INJECTOR_NAME, SyntheticClasses.injector(1));
+            // Lookups then go through the frozen index and its prefix filter
+            // rather than the map of targets being registered
+            InjectionManager.get().seal();
+            this.transformer = new InjectorTransformer();
+            this.names = new String[NAMES];
+            for (int i = 0; i < NAMES; i++) {
+                this.names[i] = "net.example.pkg" + (i % 37) + ".Class" + i;
+            }
+            this.data = new byte[0];
+        }
+
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] roundTrip(Target state) {
+        return state.transformer.transform(SyntheticClasses.TARGET_NAME, SyntheticClasses.TARGET_NAME, state.data);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] passThrough(PassThrough state) {
+        String name = state.names[state.next++ & (PassThrough.NAMES - 1)];
+        return state.transformer.transform(name, name, state.data);
+    }
+
+}
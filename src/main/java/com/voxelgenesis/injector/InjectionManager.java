@@ -24,18 +24,27 @@
  */
 package com.voxelgenesis.injector;
 
+import com.google.common.io.ByteStreams;
+import com.voxelgenesis.injector.cache.MemoryCache;
+import com.voxelgenesis.injector.config.ConfigManager;
+import com.voxelgenesis.injector.config.InjectorConfig;
+import com.voxelgenesis.injector.metrics.TransformMetrics;
+import com.voxelgenesis.injector.target.InjectorDescriptor;
 import com.voxelgenesis.injector.target.TypeInjector;
-import org.spongepowered.despector.ast.Annotation;
-import org.spongepowered.despector.ast.AnnotationType;
+import com.voxelgenesis.injector.transform.TransformPipeline;
 import org.spongepowered.despector.ast.SourceSet;
-import org.spongepowered.despector.ast.generic.ClassTypeSignature;
 import org.spongepowered.despector.ast.type.TypeEntry;
 import org.spongepowered.despector.decompiler.Decompilers;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class InjectionManager {
 
@@ -46,38 +55,250 @@ public class InjectionManager {
     }
 
     private final SourceSet injector_sourceset = new SourceSet();
-    private final Map<String, TypeInjector> targets = new HashMap<>();
+    private final Map<String, TypeInjector> targets = new ConcurrentHashMap<>();
 
-    private final AnnotationType injection_annotation;
+    private volatile TargetIndex index;
+
+    private MemoryCache memory_cache;
+    private volatile boolean memory_cache_init = false;
+    private volatile TransformPipeline pipeline;
 
     private InjectionManager() {
-        this.injection_annotation = this.injector_sourceset.getAnnotationType("com/voxelgenesis/injector/Injector");
+        TransformMetrics.get().register();
     }
 
     public SourceSet getSourceSet() {
         return this.injector_sourceset;
     }
 
+    /**
+     * Gets the in-memory cache of transformed classes, or null if it is
+     * disabled in the config.
+     */
+    public MemoryCache getMemoryCache() {
+        if (!this.memory_cache_init) {
+            synchronized (this) {
+                if (!this.memory_cache_init) {
+                    InjectorConfig.CacheConfig config = ConfigManager.getConfig().cache;
+                    if (config.memory_enabled) {
+                        this.memory_cache = new MemoryCache(config.memory_max_bytes);
+                    }
+                    this.memory_cache_init = true;
+                }
+            }
+        }
+        return this.memory_cache;
+    }
+
+    /**
+     * Gets the pipeline that target classes are transformed through, created
+     * from the config the first time it is requested.
+     */
+    public TransformPipeline getPipeline() {
+        TransformPipeline pipeline = this.pipeline;
+        if (pipeline == null) {
+            synchronized (this) {
+                pipeline = this.pipeline;
+                if (pipeline == null) {
+                    pipeline = new TransformPipeline(ConfigManager.getConfig(), getMemoryCache());
+                    this.pipeline = pipeline;
+                }
+            }
+        }
+        return pipeline;
+    }
+
+    /**
+     * Registers an injector from the class path of the given class. The
+     * injector and its descriptor are looked up through the class loader so
+     * that injectors packaged in jars are found as well. Classes loaded by the
+     * bootstrap loader look the injector up on the system class path.
+     */
     public void addInjector(Class<?> src, String injector) {
-        String path = src.getProtectionDomain().getCodeSource().getLocation().getPath();
-        File file = new File(path, injector.replace('.', '/') + ".class");
-        try {
-            TypeEntry type = Decompilers.WILD.decompile(file, this.injector_sourceset);
-            Decompilers.WILD.flushTasks();
-            Annotation anno = type.getAnnotation(this.injection_annotation);
-            if (anno == null) {
-                System.err.println("Injector " + injector + " is missing the @Injector annotation");
+        ClassLoader loader = src.getClassLoader();
+        if (loader == null) {
+            loader = ClassLoader.getSystemClassLoader();
+        }
+        String path = injector.replace('.', '/');
+        try (InputStream in = loader.getResourceAsStream(path + ".class")) {
+            if (in == null) {
+                System.err.println("Could not find injector " + injector + " on the class path of " + src.getName());
                 return;
             }
-            String target = anno.<ClassTypeSignature>getValue("value").getClassName();
-            this.targets.put(target, new TypeInjector(target, type));
+            byte[] data = ByteStreams.toByteArray(in);
+            byte[] descriptor = null;
+            try (InputStream desc = loader.getResourceAsStream(path + InjectorDescriptor.EXTENSION)) {
+                if (desc != null) {
+                    descriptor = ByteStreams.toByteArray(desc);
+                }
+            }
+            addInjector(injector, data, descriptor);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Registers an injector from the bytes of its class file.
+     */
+    public void addInjector(String injector, byte[] data) throws IOException {
+        addInjector(injector, data, null);
+    }
+
+    /**
+     * Registers an injector from the bytes of its class file and of the
+     * descriptor written for it by the annotation processor. With a descriptor
+     * the injector's annotations are not read and its matchers are not lexed.
+     *
+     * <p>Only the injector's target is read here. The injector is decompiled
+     * and its matchers compiled the first time its target is transformed.</p>
+     *
+     * @param descriptor The bytes of the descriptor, or null if there is none
+     */
+    public void addInjector(String injector, byte[] data, byte[] descriptor) throws IOException {
+        InjectorScanner.Candidate candidate = InjectorScanner.read(injector, data, descriptor);
+        if (candidate.getTarget() == null) {
+            System.err.println("Injector " + injector + " is missing the @Injector annotation");
+            return;
+        }
+        addInjectors(Collections.singletonList(candidate));
+    }
+
+    /**
+     * Registers every @Injector annotated class of a directory of class files
+     * or a jar, other classes are skipped. Returns the number of injectors
+     * registered.
+     */
+    public int addInjectors(Path path) throws IOException {
+        return addInjectors(InjectorScanner.scan(path));
+    }
+
+    /**
+     * Registers every @Injector annotated class in a package or its
+     * subpackages on the class path of the given loader, which may be null
+     * for the system class loader. The package must not be the root package.
+     * Returns the number of injectors registered.
+     */
+    public int addInjectors(ClassLoader loader, String package_name) throws IOException {
+        return addInjectors(InjectorScanner.scan(loader, package_name));
+    }
+
+    /**
+     * Registers injectors which have already been read by the
+     * {@link InjectorScanner}. Returns the number of injectors registered.
+     */
+    public synchronized int addInjectors(List<InjectorScanner.Candidate> candidates) {
+        if (this.index != null) {
+            String name = candidates.isEmpty() ? "" : " " + candidates.get(0).getName();
+            throw new IllegalStateException("Cannot add injector" + name + " after registration has been sealed");
+        }
+        for (InjectorScanner.Candidate candidate : candidates) {
+            // Several injectors of one target are merged so the target is
+            // still only decompiled and emitted once.
+            String target = normalize(candidate.getTarget());
+            TypeInjector existing = this.targets.get(target);
+            TypeInjector injection = create(candidate);
+            this.targets.put(target, existing == null ? injection : existing.merge(injection));
+        }
+        return candidates.size();
+    }
+
+    /**
+     * Replaces all injectors of the given target with the given injectors,
+     * which may be empty to remove the target. Unlike adding injectors this
+     * is allowed after registration has been sealed, for reloading injectors
+     * which have changed while running.
+     *
+     * @return The injector now registered for the target, or null if there is
+     *     none
+     */
+    public synchronized TypeInjector replaceInjectors(String target, List<InjectorScanner.Candidate> candidates) {
+        target = normalize(target);
+        TypeInjector injection = null;
+        for (InjectorScanner.Candidate candidate : candidates) {
+            if (!target.equals(normalize(candidate.getTarget()))) {
+                throw new IllegalArgumentException("Injector " + candidate.getName() + " does not target " + target);
+            }
+            injection = injection == null ? create(candidate) : injection.merge(create(candidate));
+        }
+        if (injection == null) {
+            this.targets.remove(target);
+        } else {
+            this.targets.put(target, injection);
+        }
+        if (this.index != null) {
+            this.index = new TargetIndex(this.targets);
+        }
+        MemoryCache memory_cache = getMemoryCache();
+        if (memory_cache != null) {
+            memory_cache.invalidate(target);
+        }
+        return injection;
+    }
+
+    private TypeInjector create(InjectorScanner.Candidate candidate) {
+        return new TypeInjector(candidate.getTarget(), candidate.getData(), candidate.getFingerprint(), candidate.getDescriptor(), this::decompileInjector);
+    }
+
+    /**
+     * Decompiles an injector into the injector source set. Serialized as the
+     * injectors share the source set, lookups of registered injectors may
+     * happen concurrently from any thread.
+     */
+    private synchronized TypeEntry decompileInjector(byte[] data) {
+        try {
+            TypeEntry type = Decompilers.WILD.decompile(new ByteArrayInputStream(data), this.injector_sourceset);
+            Decompilers.WILD.flushTasks();
+            return type;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the injector of the given target, or null if it is not a target.
+     * Before the registration is sealed this looks up the targets registered
+     * so far.
+     */
     public TypeInjector getInjection(String target) {
-        return this.targets.get(target);
+        TargetIndex index = this.index;
+        if (index != null) {
+            return index.get(target);
+        }
+        return this.targets.get(normalize(target));
+    }
+
+    // Targets are keyed by their binary name, the same as the frozen index
+    private static String normalize(String name) {
+        return name.replace('/', '.');
+    }
+
+    public boolean isSealed() {
+        return this.index != null;
+    }
+
+    /**
+     * Seals the registration of injectors and builds the frozen index of
+     * targets. No further injectors may be added after this. The tweaker
+     * seals the registration just before the game is launched.
+     */
+    public synchronized TargetIndex seal() {
+        if (this.index == null) {
+            this.index = new TargetIndex(this.targets);
+        }
+        return this.index;
+    }
+
+    /**
+     * Gets the frozen index of targets, sealing the registration if it has
+     * not already been sealed.
+     */
+    public TargetIndex getTargetIndex() {
+        TargetIndex index = this.index;
+        if (index == null) {
+            index = seal();
+        }
+        return index;
     }
 
 }
@@ -0,0 +1,272 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector;
+
+import com.google.common.hash.HashCode;
+import com.voxelgenesis.injector.cache.TransformCache;
+import com.voxelgenesis.injector.target.InjectorDescriptor;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds the @Injector annotated classes of a directory, a jar or a package
+ * on the classpath. The classes and their descriptors are read, hashed and
+ * checked for the annotation in parallel, so that registering hundreds of
+ * injectors does not read them one at a time.
+ */
+public final class InjectorScanner {
+
+    private static final String INJECTOR_ANNOTATION = "Lcom/voxelgenesis/injector/Injector;";
+    private static final String CLASS_EXTENSION = ".class";
+
+    /**
+     * Scans a directory of class files or a jar for injectors. Jars are read
+     * through a zip file system rather than being extracted.
+     */
+    public static List<Candidate> scan(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return scanTree(path, "");
+        }
+        try (FileSystem jar = FileSystems.newFileSystem(path, (ClassLoader) null)) {
+            return scanTree(jar.getPath("/"), "");
+        }
+    }
+
+    /**
+     * Scans every location of a package and its subpackages on the classpath
+     * of the given loader for injectors, whether it is in a directory or a
+     * jar.
+     *
+     * <p>The root package cannot be scanned, as class loaders only list the
+     * directories and not the jars of their class path as its locations.</p>
+     *
+     * @param loader The loader to scan, or null for the system class loader
+     */
+    public static List<Candidate> scan(ClassLoader loader, String package_name) throws IOException {
+        if (package_name.isEmpty()) {
+            throw new IllegalArgumentException("Cannot scan the root package for injectors");
+        }
+        if (loader == null) {
+            loader = ClassLoader.getSystemClassLoader();
+        }
+        String path = package_name.replace('.', '/');
+        String prefix = package_name + ".";
+        List<Candidate> found = new ArrayList<>();
+        Enumeration<URL> roots = loader.getResources(path);
+        while (roots.hasMoreElements()) {
+            URI uri;
+            try {
+                uri = roots.nextElement().toURI();
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+            if ("jar".equals(uri.getScheme())) {
+                FileSystem jar;
+                boolean opened = true;
+                try {
+                    jar = FileSystems.newFileSystem(uri, Collections.emptyMap());
+                } catch (FileSystemAlreadyExistsException e) {
+                    // Someone else has the jar open, use theirs and leave it
+                    // open when done.
+                    jar = FileSystems.getFileSystem(uri);
+                    opened = false;
+                }
+                try {
+                    found.addAll(scanTree(jar.getPath("/" + path), prefix));
+                } finally {
+                    if (opened) {
+                        jar.close();
+                    }
+                }
+            } else {
+                found.addAll(scanTree(Paths.get(uri), prefix));
+            }
+        }
+        return found;
+    }
+
+    private static List<Candidate> scanTree(Path root, String prefix) throws IOException {
+        List<Path> classes;
+        try (Stream<Path> files = Files.walk(root)) {
+            classes = files.filter(p -> p.getFileName() != null && p.getFileName().toString().endsWith(CLASS_EXTENSION))
+                    .collect(Collectors.toList());
+        }
+        try {
+            return classes.parallelStream()
+                    .map(file -> {
+                        try {
+                            return read(prefix + className(root, file), file);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gets the name of the class in the given class file of a directory of
+     * class files.
+     */
+    public static String className(Path root, Path file) {
+        String name = root.relativize(file).toString();
+        name = name.substring(0, name.length() - CLASS_EXTENSION.length());
+        return name.replace(file.getFileSystem().getSeparator(), ".");
+    }
+
+    /**
+     * Reads an injector from a class file and the descriptor beside it, or
+     * returns null if the class is not annotated with @Injector.
+     */
+    public static Candidate read(String name, Path file) throws IOException {
+        String simple_name = file.getFileName().toString();
+        Path descriptor = file.resolveSibling(simple_name.substring(0, simple_name.length() - CLASS_EXTENSION.length())
+                + InjectorDescriptor.EXTENSION);
+        byte[] data = Files.readAllBytes(file);
+        Candidate candidate = read(name, data, Files.isRegularFile(descriptor) ? Files.readAllBytes(descriptor) : null);
+        // Directories and jars may hold other classes besides injectors,
+        // which are skipped quietly.
+        return candidate.getTarget() != null ? candidate : null;
+    }
+
+    /**
+     * Reads an injector from the bytes of its class file and of its
+     * descriptor. The candidate's target is null if the class is not
+     * annotated with @Injector.
+     *
+     * @param descriptor The bytes of the descriptor, or null if there is none
+     */
+    public static Candidate read(String name, byte[] data, byte[] descriptor) {
+        InjectorDescriptor desc = null;
+        if (descriptor != null) {
+            try {
+                desc = InjectorDescriptor.read(descriptor);
+            } catch (IOException e) {
+                System.err.println("Ignoring the descriptor of injector " + name + ": " + e.getMessage());
+            }
+        }
+        String target = desc != null ? desc.getTarget() : readTarget(data);
+        return new Candidate(name, target, data, TransformCache.hash(data), desc);
+    }
+
+    /**
+     * Reads the target of an injector from its @Injector annotation without
+     * parsing any of its code, or null if it has no annotation.
+     */
+    public static String readTarget(byte[] data) {
+        String[] target = new String[1];
+        new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM5) {
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                if (!INJECTOR_ANNOTATION.equals(desc)) {
+                    return null;
+                }
+                return new AnnotationVisitor(Opcodes.ASM5) {
+
+                    @Override
+                    public void visit(String name, Object value) {
+                        if ("value".equals(name)) {
+                            target[0] = ((Type) value).getClassName();
+                        }
+                    }
+
+                };
+            }
+
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return target[0];
+    }
+
+    /**
+     * An injector which has been read but not yet registered.
+     */
+    public static class Candidate {
+
+        private final String name;
+        private final String target;
+        private final byte[] data;
+        private final HashCode fingerprint;
+        private final InjectorDescriptor descriptor;
+
+        Candidate(String name, String target, byte[] data, HashCode fingerprint, InjectorDescriptor descriptor) {
+            this.name = name;
+            this.target = target;
+            this.data = data;
+            this.fingerprint = fingerprint;
+            this.descriptor = descriptor;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getTarget() {
+            return this.target;
+        }
+
+        public byte[] getData() {
+            return this.data;
+        }
+
+        public HashCode getFingerprint() {
+            return this.fingerprint;
+        }
+
+        public InjectorDescriptor getDescriptor() {
+            return this.descriptor;
+        }
+
+    }
+
+    private InjectorScanner() {
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector;
+
+import com.voxelgenesis.injector.target.TypeInjector;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A frozen lookup of injection targets by class name. Class names are
+ * rejected by length and package before the full name is ever hashed, as the
+ * vast majority of loaded classes are not targets.
+ */
+public class TargetIndex {
+
+    private final Map<String, TypeInjector> targets;
+    private final BitSet lengths = new BitSet();
+    private final String[] packages;
+    private final boolean default_package;
+
+    public TargetIndex(Map<String, TypeInjector> targets) {
+        Map<String, TypeInjector> normalized = new HashMap<>();
+        Set<String> packages = new LinkedHashSet<>();
+        boolean default_package = false;
+        for (Map.Entry<String, TypeInjector> e : targets.entrySet()) {
+            String name = e.getKey().replace('/', '.');
+            normalized.put(name, e.getValue());
+            this.lengths.set(name.length());
+            int last = name.lastIndexOf('.');
+            if (last == -1) {
+                default_package = true;
+            } else {
+                packages.add(name.substring(0, last + 1));
+            }
+        }
+        this.targets = Collections.unmodifiableMap(normalized);
+        this.packages = packages.toArray(new String[packages.size()]);
+        this.default_package = default_package;
+    }
+
+    public Map<String, TypeInjector> getTargets() {
+        return this.targets;
+    }
+
+    /**
+     * Gets if the given class name could possibly be a target, without
+     * hashing the name.
+     */
+    public boolean mayContain(String name) {
+        if (!this.lengths.get(name.length())) {
+            return false;
+        }
+        for (String pkg : this.packages) {
+            if (name.startsWith(pkg) && name.indexOf('.', pkg.length()) == -1) {
+                return true;
+            }
+        }
+        return this.default_package && name.indexOf('.') == -1;
+    }
+
+    public TypeInjector get(String name) {
+        if (!mayContain(name)) {
+            return null;
+        }
+        return this.targets.get(name);
+    }
+
+}
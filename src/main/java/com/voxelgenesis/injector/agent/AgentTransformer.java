@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.agent;
+
+import com.voxelgenesis.injector.InjectionManager;
+import com.voxelgenesis.injector.target.TypeInjector;
+import com.voxelgenesis.injector.transform.TransformPipeline;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies the registered injectors to target classes as they are loaded or
+ * retransformed.
+ *
+ * <p>The output for each target is kept, so that when the injectors of a
+ * target change only the methods whose injections changed are transformed
+ * again and all other methods are kept as they were.</p>
+ */
+class AgentTransformer implements ClassFileTransformer {
+
+    private final Map<String, byte[]> outputs = new ConcurrentHashMap<>();
+    // The methods to transform again on the next retransform of a target
+    private final Map<String, Set<String>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Marks the given methods of a target as changed, to be transformed
+     * again when the target is next retransformed.
+     */
+    void reloaded(String name, Set<String> methods) {
+        // Atomic, as a class loading thread may take the pending methods of
+        // the target at the same time
+        this.pending.merge(name, new HashSet<>(methods), (existing, added) -> {
+            Set<String> all = new HashSet<>(existing);
+            all.addAll(added);
+            return all;
+        });
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String class_name, Class<?> redefined, ProtectionDomain domain, byte[] data) {
+        if (class_name == null) {
+            return null;
+        }
+        String name = class_name.replace('/', '.');
+        InjectionManager manager = InjectionManager.get();
+        // The agent starts before the application, so unlike the launch
+        // transformer it does not seal the registration, leaving the
+        // application free to register further injectors.
+        TypeInjector injection = manager.getInjection(name);
+        Set<String> changed = this.pending.remove(name);
+        if (injection == null) {
+            // The class is given to the agent as it was before any transform,
+            // so returning nothing removes the injections of a target which
+            // no longer has any injectors.
+            this.outputs.remove(name);
+            return null;
+        }
+        try {
+            byte[] previous = this.outputs.get(name);
+            byte[] transformed = null;
+            if (redefined != null && changed != null && previous != null) {
+                transformed = transformChanged(name, injection, data, previous, changed);
+            }
+            if (transformed == null) {
+                transformed = manager.getPipeline().transform(name, injection, data);
+            }
+            this.outputs.put(name, transformed);
+            return transformed;
+        } catch (RuntimeException e) {
+            // The instrumentation drops exceptions from transformers silently
+            System.err.println("Error transforming " + name);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Transforms only the given methods of the original class again, taking
+     * all other injected methods from the previous output. Returns null if
+     * the transform fails so that the whole class is transformed instead.
+     */
+    private byte[] transformChanged(String name, TypeInjector injection, byte[] data, byte[] previous, Set<String> changed) {
+        TransformPipeline pipeline = InjectionManager.get().getPipeline();
+        byte[] partial;
+        try {
+            // Not through the pipeline, as the restricted injector shares the
+            // fingerprint of the whole injector and must not be cached.
+            partial = pipeline.getTransformer().transform(injection.restrict(changed), data);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error transforming the changed methods of " + name + ", transforming the whole class");
+            e.printStackTrace();
+            return null;
+        }
+        ClassNode result = new ClassNode();
+        new ClassReader(partial).accept(result, 0);
+        ClassNode old = new ClassNode();
+        new ClassReader(previous).accept(old, 0);
+        Map<String, MethodNode> old_methods = new HashMap<>();
+        for (MethodNode mth : old.methods) {
+            old_methods.put(mth.name + mth.desc, mth);
+        }
+        Set<String> injected = injection.getTargets().keySet();
+        for (ListIterator<MethodNode> it = result.methods.listIterator(); it.hasNext();) {
+            MethodNode mth = it.next();
+            String key = mth.name + mth.desc;
+            if (injected.contains(key) && !changed.contains(key)) {
+                MethodNode kept = old_methods.get(key);
+                if (kept != null) {
+                    it.set(kept);
+                }
+            }
+        }
+        ClassWriter writer = new ClassWriter(0);
+        result.accept(writer);
+        return writer.toByteArray();
+    }
+
+}
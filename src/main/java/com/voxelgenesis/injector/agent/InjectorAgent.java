@@ -0,0 +1,246 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.agent;
+
+import com.google.common.hash.HashCode;
+import com.voxelgenesis.injector.InjectionManager;
+import com.voxelgenesis.injector.InjectorScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A java agent which applies the injectors of the given directories and
+ * jars to classes as they are loaded. When the class files of the injectors
+ * in a directory change, the injectors are reloaded and the loaded targets
+ * whose injections changed are retransformed.
+ *
+ * <p>Usage: {@code -javaagent:injector.jar=<path>[:<path>...]}, the agent
+ * may also be attached to a running JVM with the same arguments. The agent
+ * is meant for iterating on injectors during development, when the launch
+ * transformer is not used.</p>
+ */
+public class InjectorAgent {
+
+    private static volatile InjectorAgent instance;
+
+    public static void premain(String args, Instrumentation inst) {
+        start(args, inst);
+    }
+
+    public static void agentmain(String args, Instrumentation inst) {
+        start(args, inst);
+    }
+
+    /**
+     * Gets whether the agent is applying the injectors, in which case the
+     * launch transformer must not apply them as well.
+     */
+    public static boolean isActive() {
+        return instance != null;
+    }
+
+    private static synchronized void start(String args, Instrumentation inst) {
+        if (instance != null) {
+            System.err.println("The injector agent has already been started");
+            return;
+        }
+        InjectorAgent agent = new InjectorAgent(inst);
+        inst.addTransformer(agent.transformer, true);
+        instance = agent;
+        List<Path> watched = new ArrayList<>();
+        if (args != null && !args.isEmpty()) {
+            for (String arg : args.split(File.pathSeparator)) {
+                Path path = Paths.get(arg);
+                try {
+                    agent.load(path);
+                    if (Files.isDirectory(path)) {
+                        watched.add(path);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error loading injectors from " + path);
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (!inst.isRetransformClassesSupported()) {
+            System.err.println("The JVM does not support retransforming classes, changed injectors will not be reloaded");
+            return;
+        }
+        if (!watched.isEmpty()) {
+            new InjectorWatcher(watched, agent::reload).start();
+        }
+    }
+
+    private final Instrumentation inst;
+    private final AgentTransformer transformer = new AgentTransformer();
+    // The injectors loaded by the agent by name, and the digests of the
+    // points of each of their targets
+    private final Map<String, InjectorScanner.Candidate> injectors = new HashMap<>();
+    private final Map<String, Map<String, HashCode>> digests = new HashMap<>();
+
+    private InjectorAgent(Instrumentation inst) {
+        this.inst = inst;
+    }
+
+    private void load(Path path) throws IOException {
+        List<InjectorScanner.Candidate> candidates = InjectorScanner.scan(path);
+        Set<String> targets = new HashSet<>();
+        boolean sealed;
+        synchronized (this) {
+            for (InjectorScanner.Candidate candidate : candidates) {
+                this.injectors.put(candidate.getName(), candidate);
+                targets.add(candidate.getTarget());
+            }
+            sealed = InjectionManager.get().isSealed();
+            if (!sealed) {
+                InjectionManager.get().addInjectors(candidates);
+                for (String target : targets) {
+                    this.digests.put(target, PointDigests.digest(getInjectors(target)));
+                }
+            }
+        }
+        if (sealed) {
+            // Attached after registration was sealed, so the injectors are
+            // swapped in as if they had changed.
+            update(targets);
+        } else {
+            // When attached to a running JVM some of the targets may already
+            // be loaded, which only get their injections by being
+            // retransformed.
+            retransform(targets);
+        }
+    }
+
+    /**
+     * Reloads the injectors of the given class files under a root, which may
+     * have been changed, added or deleted, and retransforms the affected
+     * targets.
+     */
+    private void reload(Path root, Collection<Path> files) {
+        Set<String> targets = new HashSet<>();
+        synchronized (this) {
+            for (Path file : files) {
+                String name = InjectorScanner.className(root, file);
+                InjectorScanner.Candidate candidate = null;
+                if (Files.isRegularFile(file)) {
+                    try {
+                        candidate = InjectorScanner.read(name, file);
+                    } catch (IOException | RuntimeException e) {
+                        // Most likely still being written, it will be read
+                        // again when it has been.
+                        System.err.println("Could not read injector " + name + ": " + e);
+                        continue;
+                    }
+                }
+                InjectorScanner.Candidate old = candidate == null ? this.injectors.remove(name) : this.injectors.put(name, candidate);
+                if (old != null) {
+                    targets.add(old.getTarget());
+                }
+                if (candidate != null) {
+                    targets.add(candidate.getTarget());
+                }
+            }
+        }
+        update(targets);
+    }
+
+    /**
+     * Registers the current injectors of the given targets in place of their
+     * previous ones, and retransforms those of the targets which are loaded
+     * and whose injections changed.
+     */
+    private void update(Set<String> targets) {
+        Set<String> retransform = new HashSet<>();
+        synchronized (this) {
+            for (String target : targets) {
+                List<InjectorScanner.Candidate> candidates = getInjectors(target);
+                Map<String, HashCode> digests = PointDigests.digest(candidates);
+                Map<String, HashCode> previous = this.digests.get(target);
+                Set<String> changed = PointDigests.changed(previous == null ? Collections.<String, HashCode>emptyMap() : previous, digests);
+                if (changed.isEmpty()) {
+                    continue;
+                }
+                this.digests.put(target, digests);
+                InjectionManager.get().replaceInjectors(target, candidates);
+                this.transformer.reloaded(target, changed);
+                retransform.add(target);
+                System.err.println("Reloaded the injectors of " + target + ", " + changed.size() + " changed methods");
+            }
+        }
+        retransform(retransform);
+    }
+
+    /**
+     * Retransforms those of the given classes which are loaded, so that the
+     * transformer applies their current injectors.
+     */
+    private void retransform(Set<String> retransform) {
+        if (retransform.isEmpty() || !this.inst.isRetransformClassesSupported()) {
+            return;
+        }
+        List<Class<?>> classes = new ArrayList<>();
+        for (Class<?> cls : this.inst.getAllLoadedClasses()) {
+            if (retransform.contains(cls.getName()) && this.inst.isModifiableClass(cls)) {
+                classes.add(cls);
+            }
+        }
+        if (classes.isEmpty()) {
+            return;
+        }
+        try {
+            this.inst.retransformClasses(classes.toArray(new Class<?>[classes.size()]));
+        } catch (UnmodifiableClassException | RuntimeException | LinkageError e) {
+            // Usually a change the JVM cannot redefine in place, such as
+            // adding a method, which needs a restart
+            System.err.println("Error retransforming " + retransform);
+            e.printStackTrace();
+        }
+    }
+
+    private List<InjectorScanner.Candidate> getInjectors(String target) {
+        List<InjectorScanner.Candidate> candidates = new ArrayList<>();
+        for (InjectorScanner.Candidate candidate : this.injectors.values()) {
+            if (candidate.getTarget().equals(target)) {
+                candidates.add(candidate);
+            }
+        }
+        return candidates;
+    }
+
+}
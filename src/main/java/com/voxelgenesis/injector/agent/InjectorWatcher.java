@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.agent;
+
+import com.voxelgenesis.injector.target.InjectorDescriptor;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Watches directories of injector class files, reporting the class files
+ * which were changed, added or removed under each directory once the
+ * directory has been quiet for a moment.
+ */
+class InjectorWatcher extends Thread {
+
+    // Compilers write the class files of a build one at a time, so changes
+    // are collected until none have been seen for this long
+    private static final long QUIET_MILLIS = 250;
+    private static final String CLASS_EXTENSION = ".class";
+
+    private final List<Path> roots;
+    private final BiConsumer<Path, Set<Path>> listener;
+    // The root each watched directory belongs to
+    private final Map<WatchKey, Path> roots_by_key = new HashMap<>();
+    private final Map<WatchKey, Path> dirs_by_key = new HashMap<>();
+
+    /**
+     * @param listener Called with a root and the class files under it which
+     *     changed, some of which may no longer exist
+     */
+    InjectorWatcher(List<Path> roots, BiConsumer<Path, Set<Path>> listener) {
+        super("Injector Watcher");
+        setDaemon(true);
+        this.roots = roots;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            for (Path root : this.roots) {
+                register(watcher, root, root, null);
+            }
+            Map<Path, Set<Path>> changed = new LinkedHashMap<>();
+            while (true) {
+                WatchKey key = changed.isEmpty() ? watcher.take() : watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    for (Map.Entry<Path, Set<Path>> e : changed.entrySet()) {
+                        try {
+                            this.listener.accept(e.getKey(), e.getValue());
+                        } catch (RuntimeException ex) {
+                            System.err.println("Error reloading injectors from " + e.getKey());
+                            ex.printStackTrace();
+                        }
+                    }
+                    changed.clear();
+                    continue;
+                }
+                Path root = this.roots_by_key.get(key);
+                Path dir = this.dirs_by_key.get(key);
+                Set<Path> files = changed.get(root);
+                if (files == null) {
+                    files = new LinkedHashSet<>();
+                    changed.put(root, files);
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost, so every class file may have changed
+                        register(watcher, root, root, files);
+                        continue;
+                    }
+                    Path file = dir.resolve((Path) event.context());
+                    String name = file.getFileName().toString();
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                        // Class files may have been written to a new package
+                        // before it was registered
+                        register(watcher, root, file, files);
+                    } else if (name.endsWith(CLASS_EXTENSION)) {
+                        files.add(file);
+                    } else if (name.endsWith(InjectorDescriptor.EXTENSION)) {
+                        files.add(file.resolveSibling(name.substring(0, name.length() - InjectorDescriptor.EXTENSION.length()) + CLASS_EXTENSION));
+                    }
+                }
+                if (!key.reset()) {
+                    this.roots_by_key.remove(key);
+                    this.dirs_by_key.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        } catch (IOException e) {
+            System.err.println("Error watching injectors, changes will no longer be reloaded");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Watches the given directory and all directories below it, adding the
+     * class files found to the given set if it is not null.
+     */
+    private void register(WatchService watcher, Path root, Path start, Set<Path> found) throws IOException {
+        try (Stream<Path> paths = Files.walk(start)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isDirectory(path)) {
+                    WatchKey key = path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE);
+                    this.roots_by_key.put(key, root);
+                    this.dirs_by_key.put(key, path);
+                } else if (found != null && path.getFileName().toString().endsWith(CLASS_EXTENSION)) {
+                    found.add(path);
+                }
+            }
+        }
+    }
+
+}
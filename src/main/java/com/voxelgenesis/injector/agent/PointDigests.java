@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.agent;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.voxelgenesis.injector.InjectorScanner;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.Textifier;
+import org.objectweb.asm.util.TraceMethodVisitor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Digests of the injection points of the injectors of a target, grouped by
+ * the target method they inject into. Comparing the digests from before and
+ * after injectors change gives the target methods which must be transformed
+ * again.
+ */
+final class PointDigests {
+
+    private static final HashFunction HASH = Hashing.sha1();
+    private static final String INJECT_ANNOTATION = "Lcom/voxelgenesis/injector/Inject;";
+
+    /**
+     * Digests the points of the given injectors, keyed by the name and
+     * description of the target method. The injectors are visited in order of
+     * name so that the digests do not depend on the order they are given in.
+     */
+    static Map<String, HashCode> digest(Collection<InjectorScanner.Candidate> injectors) {
+        List<InjectorScanner.Candidate> sorted = new ArrayList<>(injectors);
+        sorted.sort(Comparator.comparing(InjectorScanner.Candidate::getName));
+        Map<String, Hasher> hashers = new HashMap<>();
+        for (InjectorScanner.Candidate injector : sorted) {
+            ClassNode node = new ClassNode();
+            new ClassReader(injector.getData()).accept(node, ClassReader.SKIP_FRAMES);
+            for (MethodNode mth : node.methods) {
+                String target = getTarget(mth);
+                if (target == null) {
+                    continue;
+                }
+                Hasher hasher = hashers.get(target);
+                if (hasher == null) {
+                    hasher = HASH.newHasher();
+                    hashers.put(target, hasher);
+                }
+                hasher.putString(injector.getName(), StandardCharsets.UTF_8);
+                // Line numbers are not injected, so edits elsewhere in the
+                // injector which only move a point do not change it.
+                for (AbstractInsnNode insn = mth.instructions.getFirst(); insn != null;) {
+                    AbstractInsnNode next = insn.getNext();
+                    if (insn instanceof LineNumberNode) {
+                        mth.instructions.remove(insn);
+                    }
+                    insn = next;
+                }
+                // The text of the method covers its annotations, and so the
+                // matcher and imports, as well as its code.
+                Textifier text = new Textifier();
+                mth.accept(new TraceMethodVisitor(text));
+                for (Object line : text.getText()) {
+                    hasher.putString(String.valueOf(line), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        Map<String, HashCode> digests = new HashMap<>();
+        for (Map.Entry<String, Hasher> e : hashers.entrySet()) {
+            digests.put(e.getKey(), e.getValue().hash());
+        }
+        return digests;
+    }
+
+    private static String getTarget(MethodNode mth) {
+        if (mth.visibleAnnotations == null) {
+            return null;
+        }
+        for (AnnotationNode anno : mth.visibleAnnotations) {
+            if (anno.desc.equals(INJECT_ANNOTATION) && anno.values != null) {
+                for (int i = 0; i < anno.values.size(); i += 2) {
+                    if ("target".equals(anno.values.get(i))) {
+                        return (String) anno.values.get(i + 1);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the target methods whose digest differs between the given
+     * digests, including those only present in one of them.
+     */
+    static Set<String> changed(Map<String, HashCode> before, Map<String, HashCode> after) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, HashCode> e : before.entrySet()) {
+            if (!Objects.equals(e.getValue(), after.get(e.getKey()))) {
+                changed.add(e.getKey());
+            }
+        }
+        for (String key : after.keySet()) {
+            if (!before.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    private PointDigests() {
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+
+/**
+ * A bounded in-memory cache of transformed class bytes, for when the class
+ * loader runs the transformer chain more than once for the same class.
+ */
+public class MemoryCache {
+
+    private final Cache<Key, byte[]> cache;
+
+    public MemoryCache(long max_bytes) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(max_bytes)
+                .<Key, byte[]>weigher((key, data) -> data.length)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Gets a copy of the cached bytes of the given class, or null if there is
+     * no entry. A copy is returned as later transformers in the chain may
+     * modify the array they are given in place.
+     */
+    public byte[] get(String name, HashCode input) {
+        byte[] data = this.cache.getIfPresent(new Key(name, input));
+        return data == null ? null : data.clone();
+    }
+
+    /**
+     * Caches a copy of the given bytes, so that the caller may hand the array
+     * on to code which modifies it.
+     */
+    public void put(String name, HashCode input, byte[] data) {
+        this.cache.put(new Key(name, input), data.clone());
+    }
+
+    /**
+     * Removes every transformed version of the given class, as its
+     * injectors have changed.
+     */
+    public void invalidate(String name) {
+        this.cache.asMap().keySet().removeIf(key -> key.name.equals(name));
+    }
+
+    /**
+     * Gets the hit, miss and eviction counts of this cache.
+     */
+    public CacheStats getStats() {
+        return this.cache.stats();
+    }
+
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * Gets the total length of the cached classes, which is kept within the
+     * maximum the cache was created with.
+     */
+    public long weight() {
+        long weight = 0;
+        for (byte[] data : this.cache.asMap().values()) {
+            weight += data.length;
+        }
+        return weight;
+    }
+
+    private static class Key {
+
+        private final String name;
+        private final HashCode input;
+
+        public Key(String name, HashCode input) {
+            this.name = name;
+            this.input = input;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return this.name.equals(k.name) && this.input.equals(k.input);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.name.hashCode() * 31 + this.input.hashCode();
+        }
+
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.cache;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * An on-disk cache of transformed class bytes, keyed by a hash of the input
+ * class bytes, the fingerprint of the injectors applied to it and the mode
+ * of the transformer.
+ */
+public class TransformCache {
+
+    // Bump whenever the output of the transform pipeline changes for the same
+    // inputs so that stale entries from older versions are never used.
+    private static final int FORMAT_VERSION = 3;
+
+    private static final HashFunction HASH = Hashing.sha1();
+
+    public static HashCode hash(byte[] data) {
+        return HASH.hashBytes(data);
+    }
+
+    /**
+     * Gets the key of the given input transformed by the given injectors.
+     * The mode of the transformer is part of the key, as the backends do not
+     * produce the same bytes and one may be turned off to work around a bug.
+     *
+     * @param partial Whether the transformer only decompiles targeted methods
+     * @param bytecode Whether the transformer uses the bytecode backend
+     */
+    public static HashCode key(HashCode input, HashCode fingerprint, boolean partial, boolean bytecode) {
+        return HASH.newHasher()
+                .putInt(FORMAT_VERSION)
+                .putBoolean(partial)
+                .putBoolean(bytecode)
+                .putBytes(fingerprint.asBytes())
+                .putBytes(input.asBytes())
+                .hash();
+    }
+
+    private final Path root;
+
+    public TransformCache(Path root) {
+        this.root = root;
+    }
+
+    public Path getRoot() {
+        return this.root;
+    }
+
+    private Path getPath(HashCode key, String ext) {
+        String name = key.toString();
+        return this.root.resolve(name.substring(0, 2)).resolve(name + ext);
+    }
+
+    /**
+     * Gets the cached transformed bytes for the given key, or null if there is
+     * no entry.
+     */
+    public byte[] get(HashCode key) {
+        Path path = getPath(key, ".class");
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            System.err.println("Error reading cached class " + path);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Gets if the given key has previously been recorded as failing to
+     * transform.
+     */
+    public boolean isFailed(HashCode key) {
+        return Files.exists(getPath(key, ".failed"));
+    }
+
+    public void put(HashCode key, byte[] data) {
+        write(getPath(key, ".class"), data);
+    }
+
+    public void putFailed(HashCode key) {
+        write(getPath(key, ".failed"), new byte[0]);
+    }
+
+    private void write(Path path, byte[] data) {
+        try {
+            Files.createDirectories(path.getParent());
+            // Write to a temporary file first so that a concurrent reader or a
+            // crash part way through never observes a partial entry.
+            Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error writing cached class " + path);
+            e.printStackTrace();
+        }
+    }
+
+}
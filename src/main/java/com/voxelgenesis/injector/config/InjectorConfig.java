@@ -24,5 +24,63 @@
  */
 package com.voxelgenesis.injector.config;
 
+import ninja.leaping.configurate.objectmapping.Setting;
+import ninja.leaping.configurate.objectmapping.serialize.ConfigSerializable;
+
+@ConfigSerializable
 public class InjectorConfig {
+
+    @Setting(value = "cache", comment = "Transformed class cache configuration")
+    public CacheConfig cache = new CacheConfig();
+
+    @Setting(value = "transform", comment = "Class transformation configuration")
+    public TransformConfig transform = new TransformConfig();
+
+    @Setting(value = "pretransform", comment = "Background transformation of all targets at startup")
+    public PretransformConfig pretransform = new PretransformConfig();
+
+    @ConfigSerializable
+    public static class CacheConfig {
+
+        @Setting(value = "enabled", comment = "Whether transformed classes should be cached on disk between launches")
+        public boolean enabled = true;
+
+        @Setting(value = "directory", comment = "The directory to store cached classes in, relative to the working directory")
+        public String directory = "injector-cache";
+
+        @Setting(value = "memory-enabled", comment = "Whether transformed classes should be kept in memory for repeated loads of the same class")
+        public boolean memory_enabled = true;
+
+        @Setting(value = "memory-max-bytes", comment = "The maximum total size in bytes of the classes kept in memory")
+        public long memory_max_bytes = 16 * 1024 * 1024;
+
+    }
+
+    @ConfigSerializable
+    public static class TransformConfig {
+
+        @Setting(value = "partial-decompile", comment = "Whether only the targeted methods of a class should be decompiled, copying all other methods unchanged")
+        public boolean partial_decompile = true;
+
+        @Setting(value = "bytecode-backend", comment = "Whether simple statement inserts should be applied directly to bytecode without decompiling, requires partial-decompile")
+        public boolean bytecode_backend = true;
+
+    }
+
+    @ConfigSerializable
+    public static class PretransformConfig {
+
+        @Setting(value = "enabled", comment = "Whether all targets should be transformed in the background from when the game is launched,"
+                + " all injectors must be registered by the tweakers before then")
+        public boolean enabled = false;
+
+        @Setting(value = "parallelism", comment = "The number of threads to transform targets with")
+        public int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        @Setting(value = "expiry-seconds", comment = "How long a transformed target is kept for after launch before it is discarded,"
+                + " targets which are loaded later are transformed when they are loaded")
+        public int expiry_seconds = 300;
+
+    }
+
 }
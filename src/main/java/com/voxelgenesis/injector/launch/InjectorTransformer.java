@@ -25,38 +25,34 @@
 package com.voxelgenesis.injector.launch;
 
 import com.voxelgenesis.injector.InjectionManager;
+import com.voxelgenesis.injector.agent.InjectorAgent;
 import com.voxelgenesis.injector.target.TypeInjector;
 import net.minecraft.launchwrapper.IClassTransformer;
-import org.spongepowered.despector.ast.type.TypeEntry;
-import org.spongepowered.despector.decompiler.Decompilers;
-import org.spongepowered.despector.emitter.Emitters;
-import org.spongepowered.despector.emitter.bytecode.BytecodeEmitterContext;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 
 public class InjectorTransformer implements IClassTransformer {
 
     @Override
     public byte[] transform(String name, String transformedName, byte[] basicClass) {
+        if (InjectorAgent.isActive()) {
+            // The agent applies the injectors when the class is defined, and
+            // must be given the class untransformed to be able to reapply
+            // them when they change.
+            return basicClass;
+        }
+        // Injectors may still be registered by other tweakers until the game
+        // is launched, so this must not seal the registration.
         TypeInjector injection = InjectionManager.get().getInjection(transformedName);
-        if (injection != null) {
-            try {
-                TypeEntry type = Decompilers.JAVA.decompile(new ByteArrayInputStream(basicClass), InjectionManager.get().getSourceSet());
-                Decompilers.JAVA.flushTasks();
-                injection.apply(type);
-
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                BytecodeEmitterContext ctx = new BytecodeEmitterContext(out);
-                Emitters.BYTECODE.emit(ctx, type);
-                return out.toByteArray();
-            } catch (IOException e) {
-                e.printStackTrace();
-                return basicClass;
+        if (injection == null || basicClass == null) {
+            return basicClass;
+        }
+        Pretransformer pre = Pretransformer.get();
+        if (pre != null) {
+            byte[] transformed = pre.take(name, basicClass);
+            if (transformed != null) {
+                return transformed;
             }
         }
-        return basicClass;
+        return InjectionManager.get().getPipeline().transform(transformedName, injection, basicClass);
     }
 
 }
@@ -24,6 +24,9 @@
  */
 package com.voxelgenesis.injector.launch;
 
+import com.voxelgenesis.injector.InjectionManager;
+import com.voxelgenesis.injector.config.ConfigManager;
+import com.voxelgenesis.injector.config.InjectorConfig;
 import net.minecraft.launchwrapper.ITweaker;
 import net.minecraft.launchwrapper.LaunchClassLoader;
 import org.spongepowered.despector.config.LibraryConfiguration;
@@ -33,9 +36,12 @@ import java.util.List;
 
 public class InjectorTweaker implements ITweaker {
 
+    private LaunchClassLoader loader;
+
     @Override
     public void acceptOptions(List<String> args, File gameDir, File assetsDir, String profile) {
-
+        File root = gameDir == null ? new File(".") : gameDir;
+        ConfigManager.load(new File(root, "config/injector.conf").toPath());
     }
 
     @Override
@@ -44,6 +50,7 @@ public class InjectorTweaker implements ITweaker {
         cl.addClassLoaderExclusion("org.spongepowered.despector");
         cl.registerTransformer("com.voxelgenesis.injector.launch.InjectorTransformer");
         LibraryConfiguration.parallel = false;
+        this.loader = cl;
     }
 
     @Override
@@ -53,6 +60,14 @@ public class InjectorTweaker implements ITweaker {
 
     @Override
     public String[] getLaunchArguments() {
+        // Called after every tweaker has been injected into the class loader
+        // and right before the game is launched, so any injectors are
+        // registered by now.
+        InjectionManager.get().seal();
+        InjectorConfig.PretransformConfig pretransform = ConfigManager.getConfig().pretransform;
+        if (pretransform.enabled && this.loader != null) {
+            Pretransformer.start(this.loader, pretransform.parallelism, pretransform.expiry_seconds);
+        }
         return new String[] {};
     }
 
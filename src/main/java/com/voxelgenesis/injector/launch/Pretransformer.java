@@ -0,0 +1,198 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.launch;
+
+import com.voxelgenesis.injector.InjectionManager;
+import com.voxelgenesis.injector.TargetIndex;
+import com.voxelgenesis.injector.target.TypeInjector;
+import com.voxelgenesis.injector.transform.TransformPipeline;
+import net.minecraft.launchwrapper.IClassNameTransformer;
+import net.minecraft.launchwrapper.IClassTransformer;
+import net.minecraft.launchwrapper.LaunchClassLoader;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transforms every registered target in the background ahead of it being
+ * loaded, so that the class loading thread only has to collect the result.
+ *
+ * <p>Results are kept by the untransformed name of their class, which is the
+ * name the class is read and loaded by. Results of targets which have not
+ * been loaded within the expiry are discarded.</p>
+ */
+public class Pretransformer {
+
+    private static volatile Pretransformer instance;
+
+    /**
+     * Gets the running pretransformer, or null if pretransformation was not
+     * started.
+     */
+    public static Pretransformer get() {
+        return instance;
+    }
+
+    /**
+     * Seals the injector registration and starts transforming every target
+     * on a pool with the given parallelism.
+     *
+     * @param expiry_seconds How long results are kept for before any which
+     *     have not been taken are discarded
+     */
+    public static synchronized Pretransformer start(LaunchClassLoader cl, int parallelism, int expiry_seconds) {
+        if (instance == null) {
+            Pretransformer pre = new Pretransformer(parallelism);
+            pre.submitAll(cl, InjectionManager.get().seal(), InjectionManager.get().getPipeline());
+            pre.expireAfter(expiry_seconds);
+            instance = pre;
+        }
+        return instance;
+    }
+
+    private final ForkJoinPool pool;
+    private final Map<String, ForkJoinTask<Result>> tasks = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private Pretransformer(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    private void submitAll(LaunchClassLoader cl, TargetIndex index, TransformPipeline pipeline) {
+        Map<String, TypeInjector> targets = index.getTargets();
+        this.pending.set(targets.size());
+        if (targets.isEmpty()) {
+            this.pool.shutdown();
+            return;
+        }
+        for (Map.Entry<String, TypeInjector> e : targets.entrySet()) {
+            String name = e.getKey();
+            String untransformed = untransformName(cl, name);
+            TypeInjector injection = e.getValue();
+            this.tasks.put(untransformed, this.pool.submit(() -> {
+                try {
+                    byte[] data;
+                    try {
+                        data = cl.getClassBytes(untransformed);
+                    } catch (IOException ex) {
+                        System.err.println("Error reading target class " + name);
+                        ex.printStackTrace();
+                        return null;
+                    }
+                    if (data == null) {
+                        return null;
+                    }
+                    return new Result(data, pipeline.transform(name, injection, data));
+                } finally {
+                    // Nothing more is submitted, so the threads are not needed
+                    // once every target has been transformed.
+                    if (this.pending.decrementAndGet() == 0) {
+                        this.pool.shutdown();
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Maps a class name back to the name it is read by, the same as the
+     * class loader does before reading the bytes of a class.
+     */
+    private static String untransformName(LaunchClassLoader cl, String name) {
+        for (IClassTransformer transformer : cl.getTransformers()) {
+            if (transformer instanceof IClassNameTransformer) {
+                return ((IClassNameTransformer) transformer).unmapClassName(name);
+            }
+        }
+        return name;
+    }
+
+    private void expireAfter(int seconds) {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "Injector pretransform expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.schedule(this::expire, Math.max(0, seconds), TimeUnit.SECONDS);
+        // The scheduled expiry still runs, after which the thread exits
+        timer.shutdown();
+    }
+
+    /**
+     * Discards the results of every target which has not been taken yet,
+     * cancelling those which are still waiting to be transformed.
+     */
+    private void expire() {
+        for (String name : this.tasks.keySet()) {
+            ForkJoinTask<Result> task = this.tasks.remove(name);
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+        // Cancelled tasks never run to count themselves as done
+        this.pool.shutdown();
+    }
+
+    /**
+     * Gets the pretransformed bytes of the given class, waiting for it to
+     * finish if it is still running. Returns null if the class was not
+     * pretransformed or has expired, or the input bytes differ from those it
+     * was pretransformed from, for example because an earlier transformer in
+     * the chain modified it.
+     *
+     * @param name The untransformed name of the class
+     */
+    public byte[] take(String name, byte[] input) {
+        ForkJoinTask<Result> task = this.tasks.remove(name);
+        if (task == null) {
+            return null;
+        }
+        Result result = task.join();
+        if (result == null || !Arrays.equals(result.input, input)) {
+            return null;
+        }
+        return result.output;
+    }
+
+    private static class Result {
+
+        final byte[] input;
+        final byte[] output;
+
+        Result(byte[] input, byte[] output) {
+            this.input = input;
+            this.output = output;
+        }
+
+    }
+
+}
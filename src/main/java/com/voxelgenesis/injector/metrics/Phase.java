@@ -0,0 +1,57 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.metrics;
+
+/**
+ * The phases of transforming a target class that are timed separately.
+ */
+public enum Phase {
+
+    /**
+     * Decompiling the target, including flushing the decompiler's tasks.
+     */
+    DECOMPILE,
+    /**
+     * Finding the matches of every point in the decompiled target methods.
+     */
+    MATCH,
+    /**
+     * Running the modifiers of the matches and splicing their results into
+     * the target methods.
+     */
+    MODIFY,
+    /**
+     * Emitting the modified target back to bytecode.
+     */
+    EMIT,
+    /**
+     * Applying points directly to the target's instructions, which replaces
+     * all of the above for the methods it handles.
+     */
+    BYTECODE;
+
+    static final Phase[] VALUES = values();
+
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+
+/**
+ * A snapshot of the metrics of a single target, or of all targets together.
+ * All times are in nanoseconds, histogram buckets are described by
+ * {@link TransformMetricsMXBean#getHistogramUpperBounds()}.
+ */
+public class TargetMetrics {
+
+    private final String name;
+    private final long transforms;
+    private final long cache_hits;
+    private final long failures;
+    private final long bytes_in;
+    private final long bytes_out;
+    private final long[] latency_histogram;
+    private final Map<String, Long> phase_nanos;
+    private final Map<String, long[]> phase_histograms;
+
+    @ConstructorProperties({"name", "transforms", "cacheHits", "failures", "bytesIn", "bytesOut", "latencyHistogram", "phaseNanos",
+            "phaseHistograms"})
+    public TargetMetrics(String name, long transforms, long cache_hits, long failures, long bytes_in, long bytes_out, long[] latency_histogram,
+            Map<String, Long> phase_nanos, Map<String, long[]> phase_histograms) {
+        this.name = name;
+        this.transforms = transforms;
+        this.cache_hits = cache_hits;
+        this.failures = failures;
+        this.bytes_in = bytes_in;
+        this.bytes_out = bytes_out;
+        this.latency_histogram = latency_histogram;
+        this.phase_nanos = phase_nanos;
+        this.phase_histograms = phase_histograms;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the number of times the target was run through the transformer,
+     * not counting cache hits or failures.
+     */
+    public long getTransforms() {
+        return this.transforms;
+    }
+
+    public long getCacheHits() {
+        return this.cache_hits;
+    }
+
+    public long getFailures() {
+        return this.failures;
+    }
+
+    public long getBytesIn() {
+        return this.bytes_in;
+    }
+
+    public long getBytesOut() {
+        return this.bytes_out;
+    }
+
+    /**
+     * Gets the histogram of the total time to produce the target's bytes,
+     * including cache hits and failures.
+     */
+    public long[] getLatencyHistogram() {
+        return this.latency_histogram;
+    }
+
+    public Map<String, Long> getPhaseNanos() {
+        return this.phase_nanos;
+    }
+
+    public Map<String, long[]> getPhaseHistograms() {
+        return this.phase_histograms;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The live counters of a single target, or of all targets together.
+ */
+class TargetStats {
+
+    private final String name;
+    private final LongAdder transforms = new LongAdder();
+    private final LongAdder cache_hits = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytes_in = new LongAdder();
+    private final LongAdder bytes_out = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder[] phase_nanos = new LongAdder[Phase.VALUES.length];
+    private final LatencyHistogram[] phase_latency = new LatencyHistogram[Phase.VALUES.length];
+
+    TargetStats(String name) {
+        this.name = name;
+        for (int i = 0; i < Phase.VALUES.length; i++) {
+            this.phase_nanos[i] = new LongAdder();
+            this.phase_latency[i] = new LatencyHistogram();
+        }
+    }
+
+    void recordCacheHit(int in, int out, long nanos) {
+        this.cache_hits.increment();
+        this.bytes_in.add(in);
+        this.bytes_out.add(out);
+        this.latency.record(nanos);
+    }
+
+    void recordTransform(TransformRecord record, int in, int out, long nanos) {
+        this.transforms.increment();
+        this.bytes_in.add(in);
+        this.bytes_out.add(out);
+        this.latency.record(nanos);
+        recordPhases(record);
+    }
+
+    void recordFailure(TransformRecord record, int in, long nanos) {
+        this.failures.increment();
+        this.bytes_in.add(in);
+        this.bytes_out.add(in);
+        this.latency.record(nanos);
+        recordPhases(record);
+    }
+
+    private void recordPhases(TransformRecord record) {
+        for (Phase phase : Phase.VALUES) {
+            long nanos = record.getNanos(phase);
+            // A phase that never ran would otherwise skew its histogram
+            // towards zero.
+            if (nanos != 0) {
+                this.phase_nanos[phase.ordinal()].add(nanos);
+                this.phase_latency[phase.ordinal()].record(nanos);
+            }
+        }
+    }
+
+    TargetMetrics snapshot() {
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        Map<String, long[]> histograms = new LinkedHashMap<>();
+        for (Phase phase : Phase.VALUES) {
+            nanos.put(phase.name(), this.phase_nanos[phase.ordinal()].sum());
+            histograms.put(phase.name(), this.phase_latency[phase.ordinal()].snapshot());
+        }
+        return new TargetMetrics(this.name, this.transforms.sum(), this.cache_hits.sum(), this.failures.sum(), this.bytes_in.sum(),
+                this.bytes_out.sum(), this.latency.snapshot(), nanos, histograms);
+    }
+
+}
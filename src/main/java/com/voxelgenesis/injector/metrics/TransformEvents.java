@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.metrics;
+
+import com.voxelgenesis.injector.metrics.jfr.FlightRecorderEvents;
+
+/**
+ * Emits flight recorder events for transformations when the running VM
+ * supports them and they are enabled in a recording.
+ *
+ * <p>Events are passed around as opaque handles so that no class outside of
+ * {@link FlightRecorderEvents} refers to the flight recorder API, and that
+ * class is only loaded once the API is known to exist. A null handle means
+ * the event is not being recorded and is ignored.</p>
+ */
+public final class TransformEvents {
+
+    private static final boolean AVAILABLE = detect();
+
+    private static boolean detect() {
+        try {
+            Class.forName("jdk.jfr.Event", false, TransformEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    public static Object beginClass() {
+        return AVAILABLE ? FlightRecorderEvents.beginClass() : null;
+    }
+
+    public static void commitClass(Object event, String name, String result, int in, int out, TransformRecord record) {
+        if (event != null) {
+            FlightRecorderEvents.commitClass(event, name, result, in, out, record);
+        }
+    }
+
+    public static Object beginTarget() {
+        return AVAILABLE ? FlightRecorderEvents.beginTarget() : null;
+    }
+
+    public static void commitTarget(Object event, String owner, String method, String backend, int matches, String modifiers, long match_nanos,
+            long modify_nanos, long bytecode_nanos) {
+        if (event != null) {
+            FlightRecorderEvents.commitTarget(event, owner, method, backend, matches, modifiers, match_nanos, modify_nanos, bytecode_nanos);
+        }
+    }
+
+    private TransformEvents() {
+    }
+
+}
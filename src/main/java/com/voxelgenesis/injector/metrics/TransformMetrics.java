@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the time spent transforming target classes, per target and in
+ * aggregate. The counters are striped so that recording from many class
+ * loading threads at once does not contend.
+ */
+public class TransformMetrics implements TransformMetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.voxelgenesis.injector:type=TransformMetrics";
+
+    private static final TransformMetrics instance = new TransformMetrics();
+
+    public static TransformMetrics get() {
+        return instance;
+    }
+
+    private final ConcurrentMap<String, TargetStats> targets = new ConcurrentHashMap<>();
+    private volatile TargetStats aggregate = new TargetStats("*");
+
+    private TransformMetrics() {
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, if they are not
+     * already registered.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering transform metrics");
+            e.printStackTrace();
+        }
+    }
+
+    private TargetStats getStats(String name) {
+        TargetStats stats = this.targets.get(name);
+        if (stats == null) {
+            stats = this.targets.computeIfAbsent(name, TargetStats::new);
+        }
+        return stats;
+    }
+
+    public void recordCacheHit(String name, int in, int out, long nanos) {
+        getStats(name).recordCacheHit(in, out, nanos);
+        this.aggregate.recordCacheHit(in, out, nanos);
+    }
+
+    public void recordTransform(String name, TransformRecord record, int in, int out, long nanos) {
+        getStats(name).recordTransform(record, in, out, nanos);
+        this.aggregate.recordTransform(record, in, out, nanos);
+    }
+
+    public void recordFailure(String name, TransformRecord record, int in, long nanos) {
+        getStats(name).recordFailure(record, in, nanos);
+        this.aggregate.recordFailure(record, in, nanos);
+    }
+
+    @Override
+    public TargetMetrics getAggregate() {
+        return this.aggregate.snapshot();
+    }
+
+    @Override
+    public List<String> getTargetNames() {
+        List<String> names = new ArrayList<>(this.targets.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public TargetMetrics getTarget(String name) {
+        TargetStats stats = this.targets.get(name);
+        return stats == null ? null : stats.snapshot();
+    }
+
+    @Override
+    public long[] getHistogramUpperBounds() {
+        return LatencyHistogram.getUpperBounds();
+    }
+
+    @Override
+    public void reset() {
+        this.targets.clear();
+        this.aggregate = new TargetStats("*");
+    }
+
+}
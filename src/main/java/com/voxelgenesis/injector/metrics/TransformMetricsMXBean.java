@@ -22,29 +22,34 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-package com.voxelgenesis.injector.target.parse;
+package com.voxelgenesis.injector.metrics;
 
-public class ParseToken {
+import java.util.List;
 
-    private final TokenType type;
-    private final String token;
+/**
+ * The management interface of {@link TransformMetrics}.
+ */
+public interface TransformMetricsMXBean {
+
+    /**
+     * Gets the metrics of all targets together.
+     */
+    TargetMetrics getAggregate();
 
-    public ParseToken(TokenType type) {
-        this.type = type;
-        this.token = null;
-    }
+    List<String> getTargetNames();
 
-    public ParseToken(TokenType type, String s) {
-        this.type = type;
-        this.token = s;
-    }
+    /**
+     * Gets the metrics of the given target, or null if it has not been
+     * transformed.
+     */
+    TargetMetrics getTarget(String name);
 
-    public TokenType getType() {
-        return this.type;
-    }
+    /**
+     * Gets the exclusive upper bound in microseconds of each bucket of the
+     * latency histograms.
+     */
+    long[] getHistogramUpperBounds();
 
-    public String getToken() {
-        return this.token;
-    }
+    void reset();
 
 }
@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.voxelgenesis.injector.ClassTransform")
+@Label("Class Transform")
+@Category("Injector")
+@Description("A target class passing through the transform pipeline")
+class ClassTransformEvent extends Event {
+
+    @Label("Class")
+    String className;
+
+    @Label("Result")
+    @Description("One of transformed, cached or failed")
+    String result;
+
+    @Label("Bytes In")
+    @DataAmount
+    int bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    int bytesOut;
+
+    @Label("Decompile Time")
+    @Timespan
+    long decompileTime;
+
+    @Label("Match Time")
+    @Timespan
+    long matchTime;
+
+    @Label("Modify Time")
+    @Timespan
+    long modifyTime;
+
+    @Label("Emit Time")
+    @Timespan
+    long emitTime;
+
+    @Label("Bytecode Time")
+    @Description("Time spent applying injections directly to bytecode")
+    @Timespan
+    long bytecodeTime;
+
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.metrics.jfr;
+
+import com.voxelgenesis.injector.metrics.Phase;
+import com.voxelgenesis.injector.metrics.TransformRecord;
+import jdk.jfr.EventType;
+
+/**
+ * Creates and commits the flight recorder events. Only loaded once the
+ * flight recorder API is known to be available.
+ */
+public final class FlightRecorderEvents {
+
+    private static final EventType CLASS_TYPE = EventType.getEventType(ClassTransformEvent.class);
+    private static final EventType TARGET_TYPE = EventType.getEventType(TargetTransformEvent.class);
+
+    /**
+     * Begins a class event, or returns null without allocating anything if
+     * the event is not enabled in any recording.
+     */
+    public static Object beginClass() {
+        if (!CLASS_TYPE.isEnabled()) {
+            return null;
+        }
+        ClassTransformEvent event = new ClassTransformEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitClass(Object handle, String name, String result, int in, int out, TransformRecord record) {
+        ClassTransformEvent event = (ClassTransformEvent) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.className = name;
+            event.result = result;
+            event.bytesIn = in;
+            event.bytesOut = out;
+            event.decompileTime = record.getNanos(Phase.DECOMPILE);
+            event.matchTime = record.getNanos(Phase.MATCH);
+            event.modifyTime = record.getNanos(Phase.MODIFY);
+            event.emitTime = record.getNanos(Phase.EMIT);
+            event.bytecodeTime = record.getNanos(Phase.BYTECODE);
+            event.commit();
+        }
+    }
+
+    public static Object beginTarget() {
+        if (!TARGET_TYPE.isEnabled()) {
+            return null;
+        }
+        TargetTransformEvent event = new TargetTransformEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitTarget(Object handle, String owner, String method, String backend, int matches, String modifiers, long match_nanos,
+            long modify_nanos, long bytecode_nanos) {
+        TargetTransformEvent event = (TargetTransformEvent) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.className = owner;
+            event.method = method;
+            event.backend = backend;
+            event.matches = matches;
+            event.modifiers = modifiers;
+            event.matchTime = match_nanos;
+            event.modifyTime = modify_nanos;
+            event.bytecodeTime = bytecode_nanos;
+            event.commit();
+        }
+    }
+
+    private FlightRecorderEvents() {
+    }
+
+}
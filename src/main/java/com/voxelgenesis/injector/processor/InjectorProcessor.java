@@ -0,0 +1,234 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.processor;
+
+import com.voxelgenesis.injector.Inject;
+import com.voxelgenesis.injector.Injector;
+import com.voxelgenesis.injector.Local;
+import com.voxelgenesis.injector.target.InjectorDescriptor;
+import com.voxelgenesis.injector.target.parse.Lexer;
+import com.voxelgenesis.injector.target.parse.MatchParser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Validates the {@link Inject} methods of every {@link Injector} at compile
+ * time and writes an {@link InjectorDescriptor} next to each injector's
+ * class file, so that invalid matchers fail the build rather than the game
+ * and the runtime does not need to read the annotations or lex the matchers.
+ */
+@SupportedAnnotationTypes("com.voxelgenesis.injector.Injector")
+public class InjectorProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+        for (Element element : env.getElementsAnnotatedWith(Injector.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error("@Injector may only be placed on a class", element);
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            try {
+                processInjector(type);
+            } catch (IOException e) {
+                error("Error writing the injector descriptor: " + e.getMessage(), type);
+            }
+        }
+        return false;
+    }
+
+    private void processInjector(TypeElement type) throws IOException {
+        AnnotationMirror injector = getAnnotation(type, Injector.class);
+        String target = binaryName((TypeMirror) getValue(injector, "value").getValue());
+        List<InjectorDescriptor.Point> points = new ArrayList<>();
+        boolean valid = true;
+        for (Element member : type.getEnclosedElements()) {
+            AnnotationMirror inject = getAnnotation(member, Inject.class);
+            if (member.getKind() != ElementKind.METHOD || inject == null) {
+                continue;
+            }
+            InjectorDescriptor.Point point = processPoint((ExecutableElement) member, inject);
+            if (point == null) {
+                valid = false;
+            } else {
+                points.add(point);
+            }
+        }
+        if (!valid) {
+            return;
+        }
+        String pkg = this.processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String binary = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simple = pkg.isEmpty() ? binary : binary.substring(pkg.length() + 1);
+        FileObject file = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, pkg, simple + InjectorDescriptor.EXTENSION, type);
+        try (OutputStream out = file.openOutputStream()) {
+            out.write(new InjectorDescriptor(target, points).write());
+        }
+    }
+
+    /**
+     * Validates a single inject method, returning null if it is invalid after
+     * reporting the errors.
+     */
+    private InjectorDescriptor.Point processPoint(ExecutableElement method, AnnotationMirror inject) {
+        boolean valid = true;
+        AnnotationValue target_value = getValue(inject, "target");
+        String target = (String) target_value.getValue();
+        int paren = target.indexOf('(');
+        if (paren <= 0 || target.indexOf(')') < paren) {
+            error("Inject target must be a method name followed by its descriptor, found '" + target + "'", method, inject, target_value);
+            valid = false;
+        }
+        for (VariableElement param : method.getParameters()) {
+            if (param.getAnnotation(Local.class) == null) {
+                error("Every parameter of an inject method must be annotated with @Local", param);
+                valid = false;
+            }
+        }
+
+        Map<String, String> imports = new LinkedHashMap<>();
+        @SuppressWarnings("unchecked")
+        List<? extends AnnotationValue> import_values = (List<? extends AnnotationValue>) getValue(inject, "imports").getValue();
+        for (AnnotationValue im : import_values) {
+            String desc = descriptor((TypeMirror) im.getValue());
+            String name = desc.substring(1, desc.length() - 1);
+            imports.put(name.substring(name.lastIndexOf('/') + 1), desc);
+        }
+
+        AnnotationValue matcher_value = getValue(inject, "matcher");
+        String matcher = (String) matcher_value.getValue();
+        int[] tokens = null;
+        try {
+            tokens = Lexer.tokenize(matcher);
+            MatchParser parser = new MatchParser(matcher, tokens);
+            parser.addImports(imports);
+            parser.parse();
+        } catch (RuntimeException e) {
+            error("Invalid matcher: " + e.getMessage(), method, inject, matcher_value);
+            valid = false;
+        }
+        if (!valid) {
+            return null;
+        }
+        StringBuilder desc = new StringBuilder("(");
+        for (VariableElement param : method.getParameters()) {
+            desc.append(descriptor(param.asType()));
+        }
+        desc.append(')').append(descriptor(method.getReturnType()));
+        return new InjectorDescriptor.Point(method.getSimpleName().toString(), desc.toString(), target, matcher, imports, tokens);
+    }
+
+    private AnnotationMirror getAnnotation(Element element, Class<?> type) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement anno = (TypeElement) mirror.getAnnotationType().asElement();
+            if (anno.getQualifiedName().contentEquals(type.getName())) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private AnnotationValue getValue(AnnotationMirror mirror, String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values = this.processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : values.entrySet()) {
+            if (e.getKey().getSimpleName().contentEquals(name)) {
+                return e.getValue();
+            }
+        }
+        throw new IllegalStateException("Missing annotation value " + name);
+    }
+
+    private String binaryName(TypeMirror type) {
+        TypeElement element = (TypeElement) this.processingEnv.getTypeUtils().asElement(type);
+        return this.processingEnv.getElementUtils().getBinaryName(element).toString();
+    }
+
+    private String descriptor(TypeMirror type) {
+        TypeMirror erased = this.processingEnv.getTypeUtils().erasure(type);
+        switch (erased.getKind()) {
+        case BOOLEAN:
+            return "Z";
+        case BYTE:
+            return "B";
+        case CHAR:
+            return "C";
+        case SHORT:
+            return "S";
+        case INT:
+            return "I";
+        case LONG:
+            return "J";
+        case FLOAT:
+            return "F";
+        case DOUBLE:
+            return "D";
+        case VOID:
+            return "V";
+        case ARRAY:
+            return "[" + descriptor(((ArrayType) erased).getComponentType());
+        case DECLARED:
+            return "L" + binaryName(erased).replace('.', '/') + ";";
+        default:
+            throw new IllegalStateException("Unsupported type " + type);
+        }
+    }
+
+    private void error(String msg, Element element) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, element);
+    }
+
+    private void error(String msg, Element element, AnnotationMirror anno, AnnotationValue value) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, element, anno, value);
+    }
+
+}
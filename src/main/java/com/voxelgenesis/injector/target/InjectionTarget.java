@@ -24,38 +24,177 @@
  */
 package com.voxelgenesis.injector.target;
 
+import com.voxelgenesis.injector.metrics.Phase;
+import com.voxelgenesis.injector.metrics.TransformRecord;
+import com.voxelgenesis.injector.target.bytecode.BytecodeInjection;
+import com.voxelgenesis.injector.target.match.BlockSplice;
+import com.voxelgenesis.injector.target.match.BytecodeAnchors;
 import com.voxelgenesis.injector.target.match.InjectionMatcher;
 import com.voxelgenesis.injector.target.match.MatchedStatements;
+import com.voxelgenesis.injector.target.match.StatementIndex;
+import com.voxelgenesis.injector.target.match.modifier.StatementInsertModifier;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
 import org.spongepowered.despector.ast.stmt.Statement;
+import org.spongepowered.despector.ast.stmt.StatementBlock;
 import org.spongepowered.despector.ast.type.MethodEntry;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 public class InjectionTarget {
 
     private final String target;
-    private final List<InjectionMatcher> points = new ArrayList<>();
+    private final List<InjectionMatcher> points;
+    private final List<BytecodeInjection> bytecode_points;
+    // The indices of the points grouped by the anchor key of their first
+    // statement, so each candidate position is only visited once
+    private final Map<String, int[]> points_by_key;
+    private final String modifier_types;
 
-    public InjectionTarget(String target) {
+    /**
+     * @param bytecode_points The points compiled for the bytecode backend, or
+     *     null if any of the points can only be applied to the decompiled
+     *     method
+     */
+    public InjectionTarget(String target, List<InjectionMatcher> points, List<BytecodeInjection> bytecode_points) {
         this.target = target;
+        this.points = Collections.unmodifiableList(new ArrayList<>(points));
+        this.bytecode_points = bytecode_points == null ? null : Collections.unmodifiableList(new ArrayList<>(bytecode_points));
+
+        Map<String, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < this.points.size(); i++) {
+            String key = this.points.get(i).getAnchorKey();
+            List<Integer> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(i);
+        }
+        Map<String, int[]> points_by_key = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> e : groups.entrySet()) {
+            int[] indices = new int[e.getValue().size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = e.getValue().get(i);
+            }
+            points_by_key.put(e.getKey(), indices);
+        }
+        this.points_by_key = Collections.unmodifiableMap(points_by_key);
+
+        Set<String> modifier_types = new TreeSet<>();
+        for (InjectionMatcher point : this.points) {
+            modifier_types.add(point.getModifier().getClass().getSimpleName());
+        }
+        this.modifier_types = String.join(",", modifier_types);
     }
 
     public String getTarget() {
         return this.target;
     }
 
-    public void addInjection(InjectionMatcher point) {
-        this.points.add(point);
+    public List<InjectionMatcher> getInjections() {
+        return this.points;
+    }
+
+    /**
+     * Gets the distinct simple names of the modifiers of the points of this
+     * target, separated by commas.
+     */
+    public String getModifierTypes() {
+        return this.modifier_types;
+    }
+
+    public boolean hasBytecodeInjections() {
+        return this.bytecode_points != null;
     }
 
-    public void apply(MethodEntry mth) {
+    /**
+     * Attempts to apply all points of this target directly to the given
+     * method's instructions. Returns false without modifying the method if
+     * any of the points cannot be applied this way, in which case the method
+     * must be decompiled and passed to {@link #apply(MethodEntry)} instead.
+     */
+    public boolean applyBytecode(String owner, MethodNode mth) {
+        if (this.bytecode_points == null) {
+            return false;
+        }
+        Frame<BasicValue>[] frames;
+        try {
+            frames = new Analyzer<>(new BasicInterpreter()).analyze(owner, mth);
+        } catch (AnalyzerException e) {
+            return false;
+        }
+        List<BytecodeInjection.Site> sites = new ArrayList<>();
+        Set<AbstractInsnNode> anchors = new HashSet<>();
+        for (BytecodeInjection point : this.bytecode_points) {
+            BytecodeInjection.Site site = point.locate(mth, frames);
+            if (site == null || !anchors.add(site.getNode())) {
+                return false;
+            }
+            sites.add(site);
+        }
+        BytecodeInjection.allocate(mth, sites, frames);
+        for (BytecodeInjection.Site site : sites) {
+            site.getInjection().apply(mth, site);
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the names required by every point of this target are
+     * referenced by the bytecode of the target method, so that a point which
+     * cannot match fails before the method is decompiled.
+     */
+    public void checkAnchors(String owner, BytecodeAnchors present) {
+        for (InjectionMatcher point : this.points) {
+            String missing = point.getRequiredAnchors().findMissing(present);
+            if (missing != null) {
+                throw new IllegalStateException("No match for injection into " + owner + "." + this.target + ": the method does not contain " + missing);
+            }
+        }
+    }
+
+    /**
+     * Finds the match of every point of this target in the given method with
+     * a single walk of the method's statements. Every point must match
+     * exactly once in the whole method, see
+     * {@link InjectionMatcher#match(StatementIndex)}.
+     */
+    public List<MatchedStatements> match(MethodEntry mth) {
+        StatementIndex index = new StatementIndex(mth);
+        MatchedStatements[] found = new MatchedStatements[this.points.size()];
+        for (Map.Entry<String, int[]> e : this.points_by_key.entrySet()) {
+            int[] group = e.getValue();
+            for (StatementIndex.Position pos : index.getCandidates(e.getKey())) {
+                for (int i : group) {
+                    MatchedStatements match = this.points.get(i).matchAt(pos.getBlock(), pos.getIndex());
+                    if (match == null) {
+                        continue;
+                    }
+                    if (found[i] != null) {
+                        throw new IllegalStateException("Ambiguous match");
+                    }
+                    found[i] = match;
+                }
+            }
+        }
+
         List<MatchedStatements> matches = new ArrayList<>();
         Set<Statement> modified = new HashSet<>();
-        for (InjectionMatcher point : this.points) {
-            MatchedStatements match = point.match(mth);
+        for (MatchedStatements match : found) {
             if (match == null) {
                 throw new IllegalStateException("No match");
             }
@@ -66,11 +205,40 @@ public class InjectionTarget {
             }
             matches.add(match);
         }
+        return matches;
+    }
+
+    public int apply(MethodEntry mth) {
+        return apply(mth, new TransformRecord());
+    }
 
+    /**
+     * Applies every point of this target to the given method, returning the
+     * number of matches applied.
+     */
+    public int apply(MethodEntry mth, TransformRecord record) {
+        long start = record.start();
+        List<MatchedStatements> matches = match(mth);
+        record.end(Phase.MATCH, start);
+        start = record.start();
+        // All matches were made against the unmodified method, so the edits
+        // to each block are gathered and applied in a single rebuild rather
+        // than shifting the block's statements once per match.
+        Map<StatementBlock, BlockSplice> splices = new IdentityHashMap<>();
+        int temp_base = StatementInsertModifier.firstTempLocal(mth);
         for (MatchedStatements match : matches) {
-            match.getMatcher().apply(match, mth);
+            BlockSplice splice = splices.get(match.getBlock());
+            if (splice == null) {
+                splice = new BlockSplice(match.getBlock());
+                splices.put(match.getBlock(), splice);
+            }
+            splice.add(match.getIndex(), match.getStatements(), match.getMatcher().modify(match, mth, temp_base));
         }
-
+        for (BlockSplice splice : splices.values()) {
+            splice.apply();
+        }
+        record.end(Phase.MODIFY, start);
+        return matches.size();
     }
 
 }
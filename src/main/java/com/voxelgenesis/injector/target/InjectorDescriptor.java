@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The injection points of an injector class as validated and lexed at
+ * compile time by the annotation processor. Stored next to the injector's
+ * class file with the {@link #EXTENSION} extension, and used in place of
+ * reading the injector's annotations and lexing its matchers at runtime.
+ */
+public class InjectorDescriptor {
+
+    public static final String EXTENSION = ".injector";
+
+    private static final int MAGIC = 0x494E4A44;
+    private static final int VERSION = 1;
+
+    private final String target;
+    private final List<Point> points;
+
+    public InjectorDescriptor(String target, List<Point> points) {
+        this.target = target;
+        this.points = Collections.unmodifiableList(new ArrayList<>(points));
+    }
+
+    /**
+     * Gets the binary name of the target class.
+     */
+    public String getTarget() {
+        return this.target;
+    }
+
+    public List<Point> getPoints() {
+        return this.points;
+    }
+
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeUTF(this.target);
+        out.writeShort(this.points.size());
+        for (Point point : this.points) {
+            out.writeUTF(point.name);
+            out.writeUTF(point.desc);
+            out.writeUTF(point.target);
+            out.writeUTF(point.matcher);
+            out.writeShort(point.imports.size());
+            for (Map.Entry<String, String> e : point.imports.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+            // The matcher is limited to 64k by the class file format so the
+            // token offsets always fit in a short.
+            out.writeShort(point.tokens.length / 3);
+            for (int i = 0; i < point.tokens.length; i += 3) {
+                out.writeByte(point.tokens[i]);
+                out.writeShort(point.tokens[i + 1]);
+                out.writeShort(point.tokens[i + 2]);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a descriptor, throwing an IOException if it was written by an
+     * incompatible version.
+     */
+    public static InjectorDescriptor read(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an injector descriptor");
+        }
+        int version = in.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported injector descriptor version " + version);
+        }
+        String target = in.readUTF();
+        int count = in.readUnsignedShort();
+        List<Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            String desc = in.readUTF();
+            String point_target = in.readUTF();
+            String matcher = in.readUTF();
+            int import_count = in.readUnsignedShort();
+            Map<String, String> imports = new LinkedHashMap<>();
+            for (int j = 0; j < import_count; j++) {
+                imports.put(in.readUTF(), in.readUTF());
+            }
+            int[] tokens = new int[in.readUnsignedShort() * 3];
+            for (int j = 0; j < tokens.length; j += 3) {
+                tokens[j] = in.readUnsignedByte();
+                tokens[j + 1] = in.readUnsignedShort();
+                tokens[j + 2] = in.readUnsignedShort();
+            }
+            points.add(new Point(name, desc, point_target, matcher, imports, tokens));
+        }
+        return new InjectorDescriptor(target, points);
+    }
+
+    /**
+     * A single {@code @Inject} method.
+     */
+    public static class Point {
+
+        private final String name;
+        private final String desc;
+        private final String target;
+        private final String matcher;
+        private final Map<String, String> imports;
+        private final int[] tokens;
+
+        /**
+         * @param imports The imported simple names mapped to type descriptors
+         * @param tokens The matcher's tokens as produced by
+         *     {@link com.voxelgenesis.injector.target.parse.Lexer#tokenize}
+         */
+        public Point(String name, String desc, String target, String matcher, Map<String, String> imports, int[] tokens) {
+            this.name = name;
+            this.desc = desc;
+            this.target = target;
+            this.matcher = matcher;
+            this.imports = Collections.unmodifiableMap(new LinkedHashMap<>(imports));
+            this.tokens = tokens;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDescription() {
+            return this.desc;
+        }
+
+        public String getTarget() {
+            return this.target;
+        }
+
+        public String getMatcher() {
+            return this.matcher;
+        }
+
+        public Map<String, String> getImports() {
+            return this.imports;
+        }
+
+        public int[] getTokens() {
+            return this.tokens;
+        }
+
+    }
+
+}
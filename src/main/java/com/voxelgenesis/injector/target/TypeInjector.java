@@ -24,76 +24,359 @@
  */
 package com.voxelgenesis.injector.target;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.voxelgenesis.injector.metrics.Phase;
+import com.voxelgenesis.injector.metrics.TransformEvents;
+import com.voxelgenesis.injector.metrics.TransformRecord;
+import com.voxelgenesis.injector.target.bytecode.BytecodeInjection;
 import com.voxelgenesis.injector.target.match.InjectionMatcher;
-import com.voxelgenesis.injector.target.parse.MatchParser;
+import com.voxelgenesis.injector.target.parse.MatcherCache;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 import org.spongepowered.despector.ast.Annotation;
 import org.spongepowered.despector.ast.AnnotationType;
 import org.spongepowered.despector.ast.generic.ClassTypeSignature;
 import org.spongepowered.despector.ast.type.MethodEntry;
 import org.spongepowered.despector.ast.type.TypeEntry;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
+/**
+ * The injections of the injector classes of a single target class.
+ *
+ * <p>An injector may be created lazily from the bytes of its class, in which
+ * case the injector is not decompiled and its plan is not built until it is
+ * first needed, as many injectors target classes that are never loaded.</p>
+ *
+ * <p>Lazy injectors of the same target may be merged into one, so that the
+ * points of all of them are matched together and the target is decompiled
+ * and emitted only once. Merging only combines the bytes the injectors were
+ * created from, so it does not matter whether either has been built.</p>
+ */
 public class TypeInjector {
 
     private final String target;
-    private final TypeEntry injector;
+    private final HashCode fingerprint;
+
+    // The classes a lazy injector is built from, null if it was created
+    // from an already decompiled injector
+    private final List<Source> sources;
+
+    private volatile Plan plan;
+
+    public TypeInjector(String target, TypeEntry type, ClassNode node, HashCode fingerprint) {
+        this(target, type, node, fingerprint, null);
+    }
+
+    /**
+     * @param descriptor The descriptor written for the injector at compile
+     *     time, or null to read the points from the injector's annotations
+     */
+    public TypeInjector(String target, TypeEntry type, ClassNode node, HashCode fingerprint, InjectorDescriptor descriptor) {
+        this.target = target;
+        this.fingerprint = fingerprint;
+        Map<String, List<InjectionMatcher>> points = new HashMap<>();
+        Map<String, List<BytecodeInjection>> bytecode_points = new HashMap<>();
+        collectPoints(type, node, descriptor, points, bytecode_points);
+        this.sources = null;
+        this.plan = new Plan(Collections.singletonList(type), buildTargets(points, bytecode_points));
+    }
+
+    /**
+     * Creates an injector which is decompiled with the given decompiler and
+     * built the first time its plan is needed.
+     *
+     * @param descriptor The descriptor written for the injector at compile
+     *     time, or null to read the points from the injector's annotations
+     */
+    public TypeInjector(String target, byte[] data, HashCode fingerprint, InjectorDescriptor descriptor, Function<byte[], TypeEntry> decompiler) {
+        this(target, fingerprint,
+                Collections.singletonList(new Source(new ClassReader(data).getClassName(), data, fingerprint, descriptor, decompiler)));
+    }
 
-    private final Map<String, InjectionTarget> targets = new HashMap<>();
+    private TypeInjector(String target, HashCode fingerprint, List<Source> sources) {
+        this.target = target;
+        this.fingerprint = fingerprint;
+        this.sources = Collections.unmodifiableList(sources);
+    }
 
-    public TypeInjector(String target, TypeEntry type) {
+    private TypeInjector(String target, HashCode fingerprint, Plan plan) {
         this.target = target;
-        this.injector = type;
+        this.fingerprint = fingerprint;
+        this.sources = null;
+        this.plan = plan;
+    }
+
+    /**
+     * Creates an injector applying only the targets of this injector for the
+     * given methods, keyed by name and description. This builds the plan of
+     * this injector if it has not been built yet.
+     *
+     * <p>The restricted injector shares this injector's fingerprint, so its
+     * output must not be cached under it.</p>
+     */
+    public TypeInjector restrict(Set<String> methods) {
+        Plan plan = getPlan();
+        Map<String, InjectionTarget> targets = new HashMap<>();
+        for (Map.Entry<String, InjectionTarget> e : plan.targets.entrySet()) {
+            if (methods.contains(e.getKey())) {
+                targets.put(e.getKey(), e.getValue());
+            }
+        }
+        return new TypeInjector(this.target, this.fingerprint, new Plan(plan.injectors, Collections.unmodifiableMap(targets)));
+    }
+
+    /**
+     * Creates an injector applying the points of both this and the given
+     * injector, which must target the same class. Both must have been
+     * created lazily from the bytes of their classes. The merged injector is
+     * built separately from either of them.
+     *
+     * <p>An injector class present in both is only applied once, taken from
+     * the given injector. The sources are ordered by their fingerprints so
+     * that the merged injector and its fingerprint do not depend on the order
+     * in which the injectors were registered.</p>
+     */
+    public TypeInjector merge(TypeInjector other) {
+        if (!this.target.equals(other.target)) {
+            throw new IllegalArgumentException("Cannot merge injectors of " + this.target + " and " + other.target);
+        }
+        if (this.sources == null || other.sources == null) {
+            throw new IllegalStateException("Cannot merge injectors of " + this.target + " which were not created from their class bytes");
+        }
+        // The same injector may be registered more than once, for example
+        // from two roots of the class path. Its points must only be applied
+        // once, so the later copy replaces the earlier.
+        Map<String, Source> by_name = new HashMap<>();
+        for (Source source : this.sources) {
+            by_name.put(source.name, source);
+        }
+        for (Source source : other.sources) {
+            by_name.put(source.name, source);
+        }
+        List<Source> sources = new ArrayList<>(by_name.values());
+        sources.sort((a, b) -> a.fingerprint.toString().compareTo(b.fingerprint.toString()));
+        if (sources.size() == 1) {
+            return new TypeInjector(this.target, sources.get(0).fingerprint, sources);
+        }
+        List<HashCode> fingerprints = new ArrayList<>();
+        for (Source source : sources) {
+            fingerprints.add(source.fingerprint);
+        }
+        return new TypeInjector(this.target, Hashing.combineOrdered(fingerprints), sources);
+    }
+
+    private Plan getPlan() {
+        Plan plan = this.plan;
+        if (plan != null) {
+            return plan;
+        }
+        // Decompiling calls into the injection manager, which holds its own
+        // lock, so the plan is built without holding any lock of ours. Should
+        // two threads build it at once the first to finish is kept.
+        plan = buildPlan(this.sources);
+        synchronized (this) {
+            if (this.plan == null) {
+                this.plan = plan;
+            }
+            return this.plan;
+        }
+    }
+
+    private static Plan buildPlan(List<Source> sources) {
+        // The points of all sources are collected into the same targets so
+        // that overlaps between injector classes are found just as those
+        // within one class are.
+        List<TypeEntry> injectors = new ArrayList<>();
+        Map<String, List<InjectionMatcher>> points = new HashMap<>();
+        Map<String, List<BytecodeInjection>> bytecode_points = new HashMap<>();
+        for (Source source : sources) {
+            TypeEntry type = source.decompiler.apply(source.data);
+            ClassNode node = new ClassNode();
+            new ClassReader(source.data).accept(node, ClassReader.SKIP_FRAMES);
+            collectPoints(type, node, source.descriptor, points, bytecode_points);
+            injectors.add(type);
+        }
+        return new Plan(Collections.unmodifiableList(injectors), buildTargets(points, bytecode_points));
+    }
+
+    /**
+     * Gets whether the injector has been decompiled and its plan built.
+     */
+    public boolean isBuilt() {
+        return this.plan != null;
     }
 
     public String getTarget() {
         return this.target;
     }
 
+    /**
+     * Gets the first of the injector classes of this injector.
+     */
     public TypeEntry getInjector() {
-        return this.injector;
+        return getPlan().injectors.get(0);
+    }
+
+    /**
+     * Gets all of the injector classes merged into this injector.
+     */
+    public List<TypeEntry> getInjectors() {
+        return getPlan().injectors;
+    }
+
+    /**
+     * Gets a hash of the injector classes this was built from, used to
+     * invalidate cached transforms when any of the injectors change.
+     */
+    public HashCode getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Gets the compiled injection targets of this injector keyed by the name
+     * and description of the target method.
+     */
+    public Map<String, InjectionTarget> getTargets() {
+        return getPlan().targets;
+    }
+
+    private static void collectPoints(TypeEntry injector, ClassNode node, InjectorDescriptor descriptor, Map<String, List<InjectionMatcher>> points,
+            Map<String, List<BytecodeInjection>> bytecode_points) {
+        Map<String, MethodNode> method_nodes = new HashMap<>();
+        for (MethodNode mth : node.methods) {
+            method_nodes.put(mth.name + mth.desc, mth);
+        }
+        Map<String, MethodEntry> methods = new HashMap<>();
+        for (MethodEntry mth : injector.getMethods()) {
+            methods.put(mth.getName() + mth.getDescription(), mth);
+        }
+        List<InjectorDescriptor.Point> descriptor_points = descriptor != null ? descriptor.getPoints() : readPoints(injector);
+        for (InjectorDescriptor.Point point : descriptor_points) {
+            String key = point.getName() + point.getDescription();
+            MethodEntry mth = methods.get(key);
+            if (mth == null) {
+                throw new IllegalStateException("Injector method " + key + " not found in " + injector.getName());
+            }
+            String target = point.getTarget();
+            List<InjectionMatcher> target_points = points.get(target);
+            if (target_points == null) {
+                target_points = new ArrayList<>();
+                points.put(target, target_points);
+                bytecode_points.put(target, new ArrayList<>());
+            }
+            InjectionMatcher imatcher = MatcherCache.get(point.getMatcher(), point.getImports(), point.getTokens()).bind(mth);
+            target_points.add(imatcher);
+            List<BytecodeInjection> target_bytecode = bytecode_points.get(target);
+            if (target_bytecode != null) {
+                BytecodeInjection bytecode = BytecodeInjection.compile(imatcher, node.name, method_nodes.get(key));
+                if (bytecode != null) {
+                    target_bytecode.add(bytecode);
+                } else {
+                    // One point needing the decompiled method means the
+                    // whole method has to be decompiled anyway.
+                    bytecode_points.put(target, null);
+                }
+            }
+        }
+    }
+
+    private static Map<String, InjectionTarget> buildTargets(Map<String, List<InjectionMatcher>> points,
+            Map<String, List<BytecodeInjection>> bytecode_points) {
+        Map<String, InjectionTarget> targets = new HashMap<>();
+        for (Map.Entry<String, List<InjectionMatcher>> e : points.entrySet()) {
+            targets.put(e.getKey(), new InjectionTarget(e.getKey(), e.getValue(), bytecode_points.get(e.getKey())));
+        }
+        return Collections.unmodifiableMap(targets);
     }
 
-    private void buildTargets() {
-        AnnotationType inject_anno = this.injector.getSource().getAnnotationType("com/voxelgenesis/injector/Inject");
-        for (MethodEntry mth : this.injector.getMethods()) {
+    /**
+     * Reads the points of an injector without a descriptor from the
+     * annotations of its decompiled methods.
+     */
+    private static List<InjectorDescriptor.Point> readPoints(TypeEntry injector) {
+        AnnotationType inject_anno = injector.getSource().getAnnotationType("com/voxelgenesis/injector/Inject");
+        List<InjectorDescriptor.Point> points = new ArrayList<>();
+        for (MethodEntry mth : injector.getMethods()) {
             Annotation inject = mth.getAnnotation(inject_anno);
             if (inject != null) {
-                String target = inject.getValue("target");
-                String matcher = inject.getValue("matcher");
-                InjectionTarget itarget = this.targets.get(target);
-                if (itarget == null) {
-                    itarget = new InjectionTarget(target);
-                    this.targets.put(target, itarget);
-                }
-                MatchParser parser = new MatchParser(matcher, mth);
-                List<ClassTypeSignature> imports = inject.getValue("imports");
-                if (imports != null) {
-                    for (ClassTypeSignature im : imports) {
+                Map<String, String> imports = new HashMap<>();
+                List<ClassTypeSignature> import_types = inject.getValue("imports");
+                if (import_types != null) {
+                    for (ClassTypeSignature im : import_types) {
                         String type = im.getDescriptor();
                         type = type.substring(1, type.length() - 1);
                         String simple = type.substring(type.lastIndexOf('/') + 1);
-                        parser.addImport(simple, im.getDescriptor());
+                        imports.put(simple, im.getDescriptor());
                     }
                 }
-                InjectionMatcher imatcher = parser.parse();
-                itarget.addInjection(imatcher);
+                points.add(new InjectorDescriptor.Point(mth.getName(), mth.getDescription(), inject.getValue("target"), inject.getValue("matcher"),
+                        imports, null));
             }
         }
-
+        return points;
     }
 
+    /**
+     * Applies this injector to the given type. The compiled targets are never
+     * modified after construction so this may be called repeatedly.
+     */
     public void apply(TypeEntry type) {
-        buildTargets();
+        apply(type, new TransformRecord());
+    }
 
+    public void apply(TypeEntry type, TransformRecord record) {
+        Map<String, InjectionTarget> targets = getTargets();
         for (MethodEntry mth : type.getMethods()) {
-            InjectionTarget target = this.targets.get(mth.getName() + mth.getDescription());
+            String key = mth.getName() + mth.getDescription();
+            InjectionTarget target = targets.get(key);
             if (target != null) {
-                target.apply(mth);
+                Object event = TransformEvents.beginTarget();
+                long match = record.getNanos(Phase.MATCH);
+                long modify = record.getNanos(Phase.MODIFY);
+                int matches = target.apply(mth, record);
+                TransformEvents.commitTarget(event, this.target, key, "ast", matches, target.getModifierTypes(), record.getNanos(Phase.MATCH) - match,
+                        record.getNanos(Phase.MODIFY) - modify, 0);
             }
         }
     }
 
+    private static class Plan {
+
+        final List<TypeEntry> injectors;
+        final Map<String, InjectionTarget> targets;
+
+        Plan(List<TypeEntry> injectors, Map<String, InjectionTarget> targets) {
+            this.injectors = injectors;
+            this.targets = targets;
+        }
+
+    }
+
+    private static class Source {
+
+        final String name;
+        final byte[] data;
+        final HashCode fingerprint;
+        final InjectorDescriptor descriptor;
+        final Function<byte[], TypeEntry> decompiler;
+
+        Source(String name, byte[] data, HashCode fingerprint, InjectorDescriptor descriptor, Function<byte[], TypeEntry> decompiler) {
+            this.name = name;
+            this.data = data;
+            this.fingerprint = fingerprint;
+            this.descriptor = descriptor;
+            this.decompiler = decompiler;
+        }
+
+    }
+
 }
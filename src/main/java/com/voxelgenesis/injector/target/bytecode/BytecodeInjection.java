@@ -0,0 +1,472 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target.bytecode;
+
+import com.voxelgenesis.injector.target.match.InjectionMatcher;
+import com.voxelgenesis.injector.target.match.InvokeAnchor;
+import com.voxelgenesis.injector.target.match.modifier.StatementInsertModifier;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A statement insert injection compiled for applying directly to the
+ * instructions of a target method, without decompiling it.
+ */
+public class BytecodeInjection {
+
+    /**
+     * Compiles the given injection for the bytecode backend, or returns null
+     * if it is not simple enough to be applied without decompiling the
+     * target.
+     */
+    public static BytecodeInjection compile(InjectionMatcher matcher, String injector_owner, MethodNode injector) {
+        InvokeAnchor anchor = matcher.getInvokeAnchor();
+        if (anchor == null || injector == null || !(matcher.getModifier() instanceof StatementInsertModifier)) {
+            return null;
+        }
+        if (Type.getReturnType(injector.desc).getSort() != Type.VOID || !injector.tryCatchBlocks.isEmpty()) {
+            return null;
+        }
+        // Only straight line bodies are supported so that no frames need to
+        // be computed for the injected code.
+        AbstractInsnNode last = null;
+        for (AbstractInsnNode insn = injector.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn.getOpcode() == -1) {
+                continue;
+            }
+            if (last != null && last.getOpcode() == Opcodes.RETURN) {
+                return null;
+            }
+            if (insn instanceof JumpInsnNode || insn instanceof TableSwitchInsnNode || insn instanceof LookupSwitchInsnNode
+                    || insn.getOpcode() == Opcodes.RET) {
+                return null;
+            }
+            if (insn instanceof FieldInsnNode && ((FieldInsnNode) insn).owner.equals(injector_owner)) {
+                return null;
+            }
+            if (insn instanceof MethodInsnNode && ((MethodInsnNode) insn).owner.equals(injector_owner)) {
+                return null;
+            }
+            // Lambdas and method references bootstrap from synthetic methods
+            // of the injector, which the target cannot link against.
+            if (insn instanceof InvokeDynamicInsnNode && ownsHandles((InvokeDynamicInsnNode) insn, injector_owner)) {
+                return null;
+            }
+            if (insn instanceof LdcInsnNode && ownsConstant(((LdcInsnNode) insn).cst, injector_owner)) {
+                return null;
+            }
+            last = insn;
+        }
+        if (last == null || last.getOpcode() != Opcodes.RETURN) {
+            return null;
+        }
+
+        // A parameter bound with @Local names a local of the matcher, which is
+        // only known to the AST backend. The debug names of the target may
+        // not agree with the matcher, so these are left to the AST backend.
+        if (Type.getArgumentTypes(injector.desc).length != 0) {
+            return null;
+        }
+        return new BytecodeInjection(anchor, matcher.getStart() > 0, injector);
+    }
+
+    private static boolean ownsHandles(InvokeDynamicInsnNode indy, String owner) {
+        if (indy.bsm.getOwner().equals(owner)) {
+            return true;
+        }
+        for (Object arg : indy.bsmArgs) {
+            if (ownsConstant(arg, owner)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean ownsConstant(Object cst, String owner) {
+        if (cst instanceof Handle) {
+            return ((Handle) cst).getOwner().equals(owner);
+        }
+        if (cst instanceof Type) {
+            Type type = (Type) cst;
+            if (type.getSort() == Type.METHOD) {
+                return type.getDescriptor().contains("L" + owner + ";");
+            }
+            if (type.getSort() == Type.ARRAY) {
+                type = type.getElementType();
+            }
+            return type.getSort() == Type.OBJECT && type.getInternalName().equals(owner);
+        }
+        return false;
+    }
+
+    private final InvokeAnchor anchor;
+    private final String anchor_owner;
+    private final boolean after;
+    private final MethodNode injector;
+    private final boolean injector_static;
+    private final int param_size;
+    // The type sort of the value each temporary of the injector holds,
+    // indexed by slot above the parameters, or -1 if it is not a single
+    // primitive type
+    private final int[] temp_sorts;
+
+    private BytecodeInjection(InvokeAnchor anchor, boolean after, MethodNode injector) {
+        this.anchor = anchor;
+        this.anchor_owner = Type.getType(anchor.getOwner()).getInternalName();
+        this.after = after;
+        this.injector = injector;
+        this.injector_static = (injector.access & Opcodes.ACC_STATIC) != 0;
+        this.param_size = this.injector_static ? 0 : 1;
+        this.temp_sorts = tempSorts(injector, this.param_size);
+    }
+
+    private static int[] tempSorts(MethodNode injector, int param_size) {
+        int[] sorts = new int[Math.max(0, injector.maxLocals - param_size)];
+        boolean[] seen = new boolean[sorts.length];
+        for (AbstractInsnNode insn = injector.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            int var;
+            int sort;
+            if (insn instanceof VarInsnNode) {
+                var = ((VarInsnNode) insn).var;
+                sort = varSort(insn.getOpcode());
+            } else if (insn instanceof IincInsnNode) {
+                var = ((IincInsnNode) insn).var;
+                sort = Type.INT;
+            } else {
+                continue;
+            }
+            if (var < param_size) {
+                continue;
+            }
+            int temp = var - param_size;
+            if (!seen[temp]) {
+                seen[temp] = true;
+                sorts[temp] = sort;
+            } else if (sorts[temp] != sort) {
+                sorts[temp] = -1;
+            }
+        }
+        for (int i = 0; i < sorts.length; i++) {
+            if (!seen[i]) {
+                sorts[i] = -1;
+            }
+        }
+        return sorts;
+    }
+
+    private static int varSort(int opcode) {
+        switch (opcode) {
+        case Opcodes.ILOAD:
+        case Opcodes.ISTORE:
+            return Type.INT;
+        case Opcodes.LLOAD:
+        case Opcodes.LSTORE:
+            return Type.LONG;
+        case Opcodes.FLOAD:
+        case Opcodes.FSTORE:
+            return Type.FLOAT;
+        case Opcodes.DLOAD:
+        case Opcodes.DSTORE:
+            return Type.DOUBLE;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * Locates the point in the given method that this injection would be
+     * inserted at, or returns null if it cannot be applied to the method by
+     * the bytecode backend.
+     */
+    public Site locate(MethodNode target, Frame<BasicValue>[] frames) {
+        AbstractInsnNode[] insns = target.instructions.toArray();
+        Site site = null;
+        for (int i = 0; i < insns.length; i++) {
+            AbstractInsnNode end = matchAnchor(insns[i]);
+            if (end == null) {
+                continue;
+            }
+            if (site != null) {
+                // The anchor is ambiguous, leave it to the full matcher to
+                // report.
+                return null;
+            }
+            if (frames[i] == null || frames[i].getStackSize() != 0) {
+                // Not the start of a statement
+                return null;
+            }
+            site = this.after ? new Site(this, end, true) : new Site(this, insns[i], false);
+        }
+        if (site == null) {
+            return null;
+        }
+
+        boolean target_static = (target.access & Opcodes.ACC_STATIC) != 0;
+        if (!this.injector_static && target_static) {
+            return null;
+        }
+        // The only parameter is the injector's this, which is bound to the
+        // target's this in slot 0
+        site.slots = new int[this.param_size];
+        return site;
+    }
+
+    private AbstractInsnNode matchAnchor(AbstractInsnNode insn) {
+        if (insn.getOpcode() != Opcodes.GETSTATIC) {
+            return null;
+        }
+        List<String> fields = this.anchor.getFields();
+        FieldInsnNode field = (FieldInsnNode) insn;
+        if (!field.owner.equals(this.anchor_owner) || !field.name.equals(fields.get(0))) {
+            return null;
+        }
+        AbstractInsnNode next = nextInsn(insn);
+        for (int i = 1; i < fields.size(); i++) {
+            if (next == null || next.getOpcode() != Opcodes.GETFIELD || !((FieldInsnNode) next).name.equals(fields.get(i))) {
+                return null;
+            }
+            next = nextInsn(next);
+        }
+        if (next == null || (next.getOpcode() != Opcodes.INVOKEVIRTUAL && next.getOpcode() != Opcodes.INVOKEINTERFACE)) {
+            return null;
+        }
+        MethodInsnNode invoke = (MethodInsnNode) next;
+        if (!invoke.name.equals(this.anchor.getName()) || !invoke.desc.startsWith("()")) {
+            return null;
+        }
+        Type ret = Type.getReturnType(invoke.desc);
+        if (ret.getSort() == Type.VOID) {
+            return invoke;
+        }
+        // The result of the invoke must be discarded for it to be a
+        // statement on its own.
+        AbstractInsnNode pop = nextInsn(invoke);
+        if (pop == null || pop.getOpcode() != (ret.getSize() == 2 ? Opcodes.POP2 : Opcodes.POP)) {
+            return null;
+        }
+        return pop;
+    }
+
+    private static AbstractInsnNode nextInsn(AbstractInsnNode insn) {
+        AbstractInsnNode next = insn.getNext();
+        while (next != null && next.getOpcode() == -1) {
+            next = next.getNext();
+        }
+        return next;
+    }
+
+    /**
+     * Chooses the slots of the temporaries of every injection at the given
+     * sites of a method, before any of them is applied. The temporaries of
+     * all sites share the slots above the method's original locals.
+     */
+    public static void allocate(MethodNode target, List<Site> sites, Frame<BasicValue>[] frames) {
+        // The bodies read their parameters at their sites, which keeps those
+        // slots live on the paths leading there.
+        int[][] reads = new int[target.instructions.size()][];
+        for (Site site : sites) {
+            int point = getPoint(target, site);
+            int[] existing = reads[point];
+            if (existing == null) {
+                reads[point] = site.slots;
+            } else {
+                int[] merged = Arrays.copyOf(existing, existing.length + site.slots.length);
+                System.arraycopy(site.slots, 0, merged, existing.length, site.slots.length);
+                reads[point] = merged;
+            }
+        }
+        LocalLiveness liveness = LocalLiveness.analyze(target, reads);
+        int base = target.maxLocals;
+        for (Site site : sites) {
+            site.injection.allocate(target, site, frames, liveness, base);
+        }
+    }
+
+    private static int getPoint(MethodNode target, Site site) {
+        return target.instructions.indexOf(site.node) + (site.after ? 1 : 0);
+    }
+
+    /**
+     * Chooses the slots of the temporaries of this injection at the given
+     * site, which must be done for every site of a method before any of them
+     * is applied.
+     *
+     * <p>A temporary holding a primitive reuses a slot of the target which is
+     * dead at the site and outside the scope of the target's local variables,
+     * if that slot already holds the same primitive type on every path to the
+     * site, so that the frames of the target remain valid. Other temporaries
+     * are placed from the given base, which is shared by every injection into
+     * the method as no temporary is live past the end of its body.</p>
+     *
+     * @param liveness The liveness of the target's slots, or null to place
+     *     all temporaries from the base
+     */
+    public void allocate(MethodNode target, Site site, Frame<BasicValue>[] frames, LocalLiveness liveness, int base) {
+        int[] temps = new int[this.temp_sorts.length];
+        for (int i = 0; i < temps.length; i++) {
+            temps[i] = base + i;
+        }
+        site.temps = temps;
+        int point = getPoint(target, site);
+        if (liveness == null || frames[point] == null) {
+            return;
+        }
+        Frame<BasicValue> frame = frames[point];
+        BitSet taken = new BitSet();
+        for (int slot : site.slots) {
+            taken.set(slot);
+        }
+        if (target.localVariables != null) {
+            for (LocalVariableNode local : target.localVariables) {
+                if (point >= target.instructions.indexOf(local.start) && point < target.instructions.indexOf(local.end)) {
+                    taken.set(local.index, local.index + Type.getType(local.desc).getSize());
+                }
+            }
+        }
+        for (int i = 0; i < temps.length; i++) {
+            int sort = this.temp_sorts[i];
+            if (sort != Type.INT && sort != Type.LONG && sort != Type.FLOAT && sort != Type.DOUBLE) {
+                continue;
+            }
+            int size = sort == Type.LONG || sort == Type.DOUBLE ? 2 : 1;
+            for (int k = 0; k + size <= base; k++) {
+                Type held = frame.getLocal(k).getType();
+                if (held == null || held.getSort() != sort || taken.get(k) || liveness.isLive(point, k)) {
+                    continue;
+                }
+                if (size == 2 && (taken.get(k + 1) || liveness.isLive(point, k + 1))) {
+                    continue;
+                }
+                temps[i] = k;
+                taken.set(k, k + size);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Inserts this injection at the given site, which must have been located
+     * in the given method and had its temporaries allocated.
+     */
+    public void apply(MethodNode target, Site site) {
+        Map<LabelNode, LabelNode> labels = new HashMap<>();
+        for (AbstractInsnNode insn = this.injector.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof LabelNode) {
+                labels.put((LabelNode) insn, new LabelNode());
+            }
+        }
+        InsnList body = new InsnList();
+        int max_local = 0;
+        for (AbstractInsnNode insn = this.injector.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof FrameNode || insn instanceof LineNumberNode || insn.getOpcode() == Opcodes.RETURN) {
+                continue;
+            }
+            AbstractInsnNode copy = insn.clone(labels);
+            if (copy instanceof VarInsnNode) {
+                VarInsnNode var = (VarInsnNode) copy;
+                var.var = remap(var.var, site);
+                int op = var.getOpcode();
+                boolean wide = op == Opcodes.LLOAD || op == Opcodes.DLOAD || op == Opcodes.LSTORE || op == Opcodes.DSTORE;
+                max_local = Math.max(max_local, var.var + (wide ? 2 : 1));
+            } else if (copy instanceof IincInsnNode) {
+                IincInsnNode iinc = (IincInsnNode) copy;
+                iinc.var = remap(iinc.var, site);
+                max_local = Math.max(max_local, iinc.var + 1);
+            }
+            body.add(copy);
+        }
+        if (site.after) {
+            target.instructions.insert(site.node, body);
+        } else {
+            target.instructions.insertBefore(site.node, body);
+        }
+        target.maxStack = Math.max(target.maxStack, this.injector.maxStack);
+        target.maxLocals = Math.max(target.maxLocals, max_local);
+    }
+
+    private int remap(int slot, Site site) {
+        if (slot < this.param_size) {
+            return site.slots[slot];
+        }
+        return site.temps[slot - this.param_size];
+    }
+
+    /**
+     * A located insertion point of an injection in a target method.
+     */
+    public static class Site {
+
+        final BytecodeInjection injection;
+        final AbstractInsnNode node;
+        final boolean after;
+        int[] slots;
+        int[] temps;
+
+        Site(BytecodeInjection injection, AbstractInsnNode node, boolean after) {
+            this.injection = injection;
+            this.node = node;
+            this.after = after;
+        }
+
+        public BytecodeInjection getInjection() {
+            return this.injection;
+        }
+
+        public AbstractInsnNode getNode() {
+            return this.node;
+        }
+
+        public boolean isAfter() {
+            return this.after;
+        }
+
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target.bytecode;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import java.util.BitSet;
+
+/**
+ * The local slots of a method which are live before each of its
+ * instructions, found by a backward dataflow over the instructions.
+ */
+public final class LocalLiveness {
+
+    private static final int[] NONE = new int[0];
+
+    /**
+     * Analyzes the given method, or returns null if it uses subroutines as
+     * the successors of a ret are not known.
+     *
+     * @param extra_uses Slots to treat as read before the instruction of the
+     *     same index, in addition to those the method reads itself. May be
+     *     null or contain nulls.
+     */
+    public static LocalLiveness analyze(MethodNode mth, int[][] extra_uses) {
+        InsnList instructions = mth.instructions;
+        AbstractInsnNode[] insns = instructions.toArray();
+        int size = insns.length;
+        BitSet[] use = new BitSet[size];
+        BitSet[] def = new BitSet[size];
+        int[][] succ = new int[size][];
+        for (int i = 0; i < size; i++) {
+            AbstractInsnNode insn = insns[i];
+            int op = insn.getOpcode();
+            if (op == Opcodes.JSR || op == Opcodes.RET) {
+                return null;
+            }
+            if (insn instanceof VarInsnNode) {
+                int var = ((VarInsnNode) insn).var;
+                if (op >= Opcodes.ILOAD && op <= Opcodes.ALOAD) {
+                    use[i] = slots(var, op == Opcodes.LLOAD || op == Opcodes.DLOAD);
+                } else {
+                    def[i] = slots(var, op == Opcodes.LSTORE || op == Opcodes.DSTORE);
+                }
+            } else if (insn instanceof IincInsnNode) {
+                use[i] = slots(((IincInsnNode) insn).var, false);
+            }
+            if (extra_uses != null && extra_uses[i] != null) {
+                if (use[i] == null) {
+                    use[i] = new BitSet();
+                }
+                for (int slot : extra_uses[i]) {
+                    use[i].set(slot);
+                }
+            }
+
+            if (insn instanceof JumpInsnNode) {
+                int target = instructions.indexOf(((JumpInsnNode) insn).label);
+                succ[i] = op == Opcodes.GOTO || i + 1 == size ? new int[] {target} : new int[] {target, i + 1};
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode sw = (TableSwitchInsnNode) insn;
+                succ[i] = switchTargets(instructions, sw.dflt, sw.labels.toArray(new LabelNode[sw.labels.size()]));
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode sw = (LookupSwitchInsnNode) insn;
+                succ[i] = switchTargets(instructions, sw.dflt, sw.labels.toArray(new LabelNode[sw.labels.size()]));
+            } else if ((op >= Opcodes.IRETURN && op <= Opcodes.RETURN) || op == Opcodes.ATHROW || i + 1 == size) {
+                succ[i] = NONE;
+            } else {
+                succ[i] = new int[] {i + 1};
+            }
+        }
+
+        // An exception may be thrown before an instruction has stored its
+        // value, so a handler's live slots are live before every instruction
+        // it covers regardless of what that instruction defines.
+        int[][] handlers = new int[size][];
+        for (TryCatchBlockNode tcb : mth.tryCatchBlocks) {
+            int handler = instructions.indexOf(tcb.handler);
+            for (int i = instructions.indexOf(tcb.start); i < instructions.indexOf(tcb.end); i++) {
+                int[] existing = handlers[i];
+                if (existing == null) {
+                    handlers[i] = new int[] {handler};
+                } else {
+                    int[] grown = new int[existing.length + 1];
+                    System.arraycopy(existing, 0, grown, 0, existing.length);
+                    grown[existing.length] = handler;
+                    handlers[i] = grown;
+                }
+            }
+        }
+
+        BitSet[] live = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            live[i] = new BitSet();
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = size - 1; i >= 0; i--) {
+                BitSet in = new BitSet();
+                for (int s : succ[i]) {
+                    in.or(live[s]);
+                }
+                if (def[i] != null) {
+                    in.andNot(def[i]);
+                }
+                if (use[i] != null) {
+                    in.or(use[i]);
+                }
+                if (handlers[i] != null) {
+                    for (int h : handlers[i]) {
+                        in.or(live[h]);
+                    }
+                }
+                if (!in.equals(live[i])) {
+                    live[i] = in;
+                    changed = true;
+                }
+            }
+        }
+        return new LocalLiveness(live);
+    }
+
+    private static BitSet slots(int var, boolean wide) {
+        BitSet slots = new BitSet();
+        slots.set(var);
+        if (wide) {
+            slots.set(var + 1);
+        }
+        return slots;
+    }
+
+    private static int[] switchTargets(InsnList instructions, LabelNode dflt, LabelNode[] labels) {
+        int[] targets = new int[labels.length + 1];
+        targets[0] = instructions.indexOf(dflt);
+        for (int i = 0; i < labels.length; i++) {
+            targets[i + 1] = instructions.indexOf(labels[i]);
+        }
+        return targets;
+    }
+
+    private final BitSet[] live;
+
+    private LocalLiveness(BitSet[] live) {
+        this.live = live;
+    }
+
+    /**
+     * Gets whether the given slot may be read after reaching the instruction
+     * of the given index without being written first.
+     */
+    public boolean isLive(int index, int slot) {
+        return this.live[index].get(slot);
+    }
+
+}
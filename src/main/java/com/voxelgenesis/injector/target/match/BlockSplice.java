@@ -0,0 +1,154 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target.match;
+
+import org.spongepowered.despector.ast.stmt.Statement;
+import org.spongepowered.despector.ast.stmt.StatementBlock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Gathers every edit made to a single {@link StatementBlock} and applies
+ * them in one rebuild of the block's statement list.
+ *
+ * <p>Each edit replaces a run of statements, identified by the index of the
+ * first statement in the unmodified block, with a new list of statements.
+ * Statements are compared by identity so that equal statements elsewhere in
+ * the block are never mistaken for matched ones.</p>
+ */
+public class BlockSplice {
+
+    private final StatementBlock block;
+    private final List<Edit> edits = new ArrayList<>();
+
+    public BlockSplice(StatementBlock block) {
+        this.block = block;
+    }
+
+    public StatementBlock getBlock() {
+        return this.block;
+    }
+
+    public void add(int index, List<Statement> matched, List<Statement> replacement) {
+        this.edits.add(new Edit(index, matched, replacement));
+    }
+
+    public void apply() {
+        if (this.edits.isEmpty()) {
+            return;
+        }
+        Collections.sort(this.edits, (a, b) -> Integer.compare(a.index, b.index));
+        List<Statement> backing = this.block.getStatements();
+        List<Statement> result = new ArrayList<>(backing.size() + countAdded());
+        int next = 0;
+        for (int e = 0; e < this.edits.size(); e++) {
+            Edit edit = this.edits.get(e);
+            while (next < edit.index) {
+                result.add(backing.get(next++));
+            }
+            int region_end = edit.index + edit.matched.size();
+            List<Statement> region = edit.replacement;
+            // Matches may share statements that neither of them modifies, in
+            // which case the later edit is applied to the output of the
+            // earlier one over just the region they cover.
+            while (e + 1 < this.edits.size() && this.edits.get(e + 1).index < region_end) {
+                Edit overlap = this.edits.get(++e);
+                List<Statement> extended = new ArrayList<>(region);
+                for (int i = region_end; i < overlap.index + overlap.matched.size(); i++) {
+                    extended.add(backing.get(i));
+                }
+                region = overlap.applyTo(extended);
+                region_end = Math.max(region_end, overlap.index + overlap.matched.size());
+            }
+            result.addAll(region);
+            next = region_end;
+        }
+        while (next < backing.size()) {
+            result.add(backing.get(next++));
+        }
+        backing.clear();
+        backing.addAll(result);
+        this.edits.clear();
+    }
+
+    private int countAdded() {
+        int added = 0;
+        for (Edit edit : this.edits) {
+            added += Math.max(0, edit.replacement.size() - edit.matched.size());
+        }
+        return added;
+    }
+
+    private static class Edit {
+
+        final int index;
+        final List<Statement> matched;
+        final List<Statement> replacement;
+
+        Edit(int index, List<Statement> matched, List<Statement> replacement) {
+            this.index = index;
+            this.matched = matched;
+            this.replacement = replacement;
+        }
+
+        List<Statement> applyTo(List<Statement> region) {
+            int start = indexOfIdentity(region, this.matched.get(0));
+            if (start == -1) {
+                throw new IllegalStateException("Overlapping injectors");
+            }
+            List<Statement> result = new ArrayList<>(region.size() - this.matched.size() + this.replacement.size());
+            result.addAll(region.subList(0, start));
+            result.addAll(this.replacement);
+            for (int i = start; i < region.size(); i++) {
+                if (!containsIdentity(this.matched, region.get(i))) {
+                    result.add(region.get(i));
+                }
+            }
+            return result;
+        }
+
+    }
+
+    private static int indexOfIdentity(List<Statement> list, Statement stmt) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == stmt) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean containsIdentity(List<Statement> list, Statement stmt) {
+        for (Statement s : list) {
+            if (s == stmt) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
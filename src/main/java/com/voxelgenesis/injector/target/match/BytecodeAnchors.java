@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target.match;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A set of names referenced by the instructions of a method: invoked method
+ * names, accessed field names and string constants.
+ *
+ * <p>A matcher records the names it requires, which can be compared against
+ * the names found by scanning the raw bytecode of a target method to tell
+ * that it cannot possibly match before decompiling it.</p>
+ */
+public class BytecodeAnchors {
+
+    private final Set<String> methods = new HashSet<>();
+    private final Set<String> fields = new HashSet<>();
+    private final Set<String> strings = new HashSet<>();
+
+    public void addMethod(String name) {
+        this.methods.add(name);
+    }
+
+    public void addField(String name) {
+        this.fields.add(name);
+    }
+
+    public void addString(String value) {
+        this.strings.add(value);
+    }
+
+    public Set<String> getMethods() {
+        return Collections.unmodifiableSet(this.methods);
+    }
+
+    public Set<String> getFields() {
+        return Collections.unmodifiableSet(this.fields);
+    }
+
+    public Set<String> getStrings() {
+        return Collections.unmodifiableSet(this.strings);
+    }
+
+    /**
+     * Gets a description of the first of these anchors which is not present
+     * in the given anchors, or null if all are present.
+     */
+    public String findMissing(BytecodeAnchors present) {
+        for (String name : this.methods) {
+            if (!present.methods.contains(name)) {
+                return "an invoke of method '" + name + "'";
+            }
+        }
+        for (String name : this.fields) {
+            if (!present.fields.contains(name)) {
+                return "an access of field '" + name + "'";
+            }
+        }
+        for (String value : this.strings) {
+            if (!present.strings.contains(value)) {
+                return "the string constant \"" + value + "\"";
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target.match;
+
+import com.voxelgenesis.injector.target.match.modifier.ConditionValueModifier;
+import com.voxelgenesis.injector.target.match.modifier.InstructionValueModifier;
+import com.voxelgenesis.injector.target.match.modifier.StatementInsertModifier;
+import org.spongepowered.despector.ast.type.MethodEntry;
+import org.spongepowered.despector.transform.matcher.StatementMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed matcher which is not yet bound to the injector method it applies.
+ * Nothing in it depends on the injector, so one compiled matcher may be
+ * shared by every injector using the same matcher text.
+ */
+public class CompiledMatcher {
+
+    private final List<StatementMatcher<?>> matcher;
+    private final ModifierType modifier_type;
+    private final int start;
+    private final int end;
+    private final InvokeAnchor anchor;
+    private final String anchor_key;
+    private final BytecodeAnchors required;
+
+    public CompiledMatcher(List<StatementMatcher<?>> matcher, ModifierType modifier_type, int start, int end, InvokeAnchor anchor,
+            String anchor_key, BytecodeAnchors required) {
+        this.matcher = Collections.unmodifiableList(new ArrayList<>(matcher));
+        this.modifier_type = modifier_type;
+        this.start = start;
+        this.end = end;
+        this.anchor = anchor;
+        this.anchor_key = anchor_key;
+        this.required = required;
+    }
+
+    public ModifierType getModifierType() {
+        return this.modifier_type;
+    }
+
+    /**
+     * Creates the matcher applying the given injector method.
+     */
+    public InjectionMatcher bind(MethodEntry injector) {
+        InjectionModifier modifier = null;
+        switch (this.modifier_type) {
+        case INSTRUCTION_REPLACE:
+            modifier = new InstructionValueModifier(injector, this.matcher.get(this.start));
+            break;
+        case CONDITION_REPLACE:
+            modifier = new ConditionValueModifier(injector, this.matcher.get(this.start));
+            break;
+        case STATEMENT_INSERT:
+            modifier = new StatementInsertModifier(injector);
+            break;
+        default:
+            throw new IllegalStateException();
+        }
+        return new InjectionMatcher(this.matcher, modifier, this.start, this.end, this.anchor, this.anchor_key, this.required);
+    }
+
+    public static enum ModifierType {
+        INSTRUCTION_REPLACE,
+        CONDITION_REPLACE,
+        STATEMENT_INSERT
+    }
+
+}
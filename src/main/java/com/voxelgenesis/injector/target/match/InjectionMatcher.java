@@ -24,23 +24,15 @@
  */
 package com.voxelgenesis.injector.target.match;
 
+import com.voxelgenesis.injector.target.match.modifier.StatementInsertModifier;
 import org.spongepowered.despector.ast.stmt.Statement;
 import org.spongepowered.despector.ast.stmt.StatementBlock;
-import org.spongepowered.despector.ast.stmt.branch.DoWhile;
-import org.spongepowered.despector.ast.stmt.branch.For;
-import org.spongepowered.despector.ast.stmt.branch.ForEach;
-import org.spongepowered.despector.ast.stmt.branch.If;
-import org.spongepowered.despector.ast.stmt.branch.If.Elif;
-import org.spongepowered.despector.ast.stmt.branch.Switch;
-import org.spongepowered.despector.ast.stmt.branch.Switch.Case;
-import org.spongepowered.despector.ast.stmt.branch.TryCatch;
-import org.spongepowered.despector.ast.stmt.branch.TryCatch.CatchBlock;
-import org.spongepowered.despector.ast.stmt.branch.While;
 import org.spongepowered.despector.ast.type.MethodEntry;
 import org.spongepowered.despector.transform.matcher.MatchContext;
 import org.spongepowered.despector.transform.matcher.StatementMatcher;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class InjectionMatcher {
@@ -49,12 +41,19 @@ public class InjectionMatcher {
     private final InjectionModifier modifier;
     private final int start;
     private final int end;
+    private final InvokeAnchor anchor;
+    private final String anchor_key;
+    private final BytecodeAnchors required;
 
-    public InjectionMatcher(List<StatementMatcher<?>> matcher, InjectionModifier modifier, int start, int end) {
-        this.matcher = matcher;
+    public InjectionMatcher(List<StatementMatcher<?>> matcher, InjectionModifier modifier, int start, int end, InvokeAnchor anchor,
+            String anchor_key, BytecodeAnchors required) {
+        this.matcher = Collections.unmodifiableList(new ArrayList<>(matcher));
         this.modifier = modifier;
         this.start = start;
         this.end = end;
+        this.anchor = anchor;
+        this.anchor_key = anchor_key;
+        this.required = required;
     }
 
     public List<StatementMatcher<?>> getMatcher() {
@@ -65,142 +64,117 @@ public class InjectionMatcher {
         return this.modifier;
     }
 
+    public int getStart() {
+        return this.start;
+    }
+
+    public int getEnd() {
+        return this.end;
+    }
+
+    /**
+     * Gets the invoke this matcher is anchored on if it matches a single
+     * simple invoke statement, otherwise null.
+     */
+    public InvokeAnchor getInvokeAnchor() {
+        return this.anchor;
+    }
+
+    /**
+     * Gets the anchor key of the first statement of this matcher, or null if
+     * it may match any statement.
+     */
+    public String getAnchorKey() {
+        return this.anchor_key;
+    }
+
+    /**
+     * Gets the names which must be referenced by the bytecode of a method for
+     * this matcher to possibly match it.
+     */
+    public BytecodeAnchors getRequiredAnchors() {
+        return this.required;
+    }
+
     public MatchedStatements match(MethodEntry mth) {
-        return match(mth.getInstructions());
+        return match(new StatementIndex(mth));
     }
 
-    public MatchedStatements match(StatementBlock block) {
+    /**
+     * Finds the single match of this matcher anywhere in the indexed method,
+     * including nested blocks, or returns null if there is none.
+     *
+     * <p>A matcher matching more than one place in a method is rejected as
+     * ambiguous, even when both matches are in the same block. Earlier
+     * versions applied the first match in a block and ignored the rest of
+     * that block.</p>
+     *
+     * @throws IllegalStateException If there is more than one match
+     */
+    public MatchedStatements match(StatementIndex index) {
         MatchedStatements match = null;
-        outer: for (int i = 0; i < block.size(); i++) {
-            MatchContext ctx = MatchContext.create();
-            match = check(block.get(i), match);
-            if (i < block.size() - this.matcher.size() + 1) {
-                for (int j = 0; j < this.matcher.size(); j++) {
-                    Statement check = block.get(i + j);
-                    StatementMatcher<?> next_matcher = this.matcher.get(j);
-                    if (!next_matcher.matches(ctx, check)) {
-                        continue outer;
-                    }
+        for (StatementIndex.Position pos : index.getCandidates(this.anchor_key)) {
+            MatchedStatements next = matchAt(pos.getBlock(), pos.getIndex());
+            if (next != null) {
+                if (match != null) {
+                    throw new IllegalStateException("Ambiguous match");
                 }
-            } else {
-                continue;
+                match = next;
             }
-            if (match != null) {
-                throw new IllegalStateException();
-            }
-            List<Statement> matched = new ArrayList<>();
-            for (int j = 0; j < this.matcher.size(); j++) {
-                matched.add(block.get(i + j));
-            }
-            match = new MatchedStatements(this, ctx, block, matched);
-            for (int j = this.start; j <= this.end; j++) {
-                match.markModified(matched.get(j));
-            }
-            break;
         }
         return match;
     }
 
-    private MatchedStatements check(Statement stmt, MatchedStatements previous) {
-        MatchedStatements match = previous;
-        if (stmt instanceof If) {
-            If iif = (If) stmt;
-            MatchedStatements pos = match(iif.getBody());
-            if (match != null && pos != null) {
-                throw new IllegalStateException();
-            } else if (pos != null) {
-                match = pos;
-            }
-            for (Elif elif : iif.getElifBlocks()) {
-                pos = match(elif.getBody());
-                if (match != null && pos != null) {
-                    throw new IllegalStateException();
-                } else if (pos != null) {
-                    match = pos;
-                }
-            }
-            if (iif.getElseBlock() != null) {
-                pos = match(iif.getElseBlock().getBody());
-                if (match != null && pos != null) {
-                    throw new IllegalStateException();
-                } else if (pos != null) {
-                    match = pos;
-                }
-            }
-        } else if (stmt instanceof For) {
-            For ffor = (For) stmt;
-            MatchedStatements pos = match(ffor.getBody());
-            if (match != null && pos != null) {
-                throw new IllegalStateException();
-            } else if (pos != null) {
-                match = pos;
-            }
-        } else if (stmt instanceof ForEach) {
-            ForEach ffor = (ForEach) stmt;
-            MatchedStatements pos = match(ffor.getBody());
-            if (match != null && pos != null) {
-                throw new IllegalStateException();
-            } else if (pos != null) {
-                match = pos;
-            }
-        } else if (stmt instanceof While) {
-            While wwhile = (While) stmt;
-            MatchedStatements pos = match(wwhile.getBody());
-            if (match != null && pos != null) {
-                throw new IllegalStateException();
-            } else if (pos != null) {
-                match = pos;
-            }
-        } else if (stmt instanceof DoWhile) {
-            DoWhile dowhile = (DoWhile) stmt;
-            MatchedStatements pos = match(dowhile.getBody());
-            if (match != null && pos != null) {
-                throw new IllegalStateException();
-            } else if (pos != null) {
-                match = pos;
-            }
-        } else if (stmt instanceof TryCatch) {
-            TryCatch ttry = (TryCatch) stmt;
-            MatchedStatements pos = match(ttry.getTryBlock());
-            if (match != null && pos != null) {
-                throw new IllegalStateException();
-            } else if (pos != null) {
-                match = pos;
-            }
-            for (CatchBlock ccatch : ttry.getCatchBlocks()) {
-                pos = match(ccatch.getBlock());
-                if (match != null && pos != null) {
-                    throw new IllegalStateException();
-                } else if (pos != null) {
-                    match = pos;
-                }
-            }
-        } else if (stmt instanceof Switch) {
-            Switch sswitch = (Switch) stmt;
-            MatchedStatements pos = null;
-            for (Case cs : sswitch.getCases()) {
-                pos = match(cs.getBody());
-                if (match != null && pos != null) {
-                    throw new IllegalStateException();
-                } else if (pos != null) {
-                    match = pos;
-                }
+    /**
+     * Checks for a match of this matcher starting at the given position of the
+     * given block, ignoring any nested blocks.
+     */
+    public MatchedStatements matchAt(StatementBlock block, int i) {
+        if (i > block.size() - this.matcher.size()) {
+            return null;
+        }
+        MatchContext ctx = MatchContext.create();
+        for (int j = 0; j < this.matcher.size(); j++) {
+            Statement check = block.get(i + j);
+            StatementMatcher<?> next_matcher = this.matcher.get(j);
+            if (!next_matcher.matches(ctx, check)) {
+                return null;
             }
         }
+        List<Statement> matched = new ArrayList<>();
+        for (int j = 0; j < this.matcher.size(); j++) {
+            matched.add(block.get(i + j));
+        }
+        MatchedStatements match = new MatchedStatements(this, ctx, block, i, matched);
+        for (int j = this.start; j <= this.end; j++) {
+            match.markModified(matched.get(j));
+        }
         return match;
     }
 
-    public void apply(MatchedStatements mth, MethodEntry target) {
+    /**
+     * Gets the statements which should replace the matched statements of the
+     * given match, without modifying the block they were matched in.
+     */
+    public List<Statement> modify(MatchedStatements mth, MethodEntry target) {
+        return modify(mth, target, StatementInsertModifier.firstTempLocal(target));
+    }
+
+    /**
+     * @param temp_base The first slot of the target which temporaries of the
+     *     injected code may be placed in, see
+     *     {@link StatementInsertModifier#firstTempLocal(MethodEntry)}
+     */
+    public List<Statement> modify(MatchedStatements mth, MethodEntry target, int temp_base) {
         List<Statement> statements = new ArrayList<>(mth.getStatements());
-        this.modifier.apply(statements, this.start, this.end, target, mth.getMatchContext());
-        List<Statement> backing = mth.getBlock().getStatements();
-        int start = backing.indexOf(mth.getStatements().get(0));
-        for (Statement s : mth.getStatements()) {
-            backing.remove(s);
-        }
-        for (int i = statements.size() - 1; i >= 0; i--) {
-            backing.add(start, statements.get(i));
-        }
+        this.modifier.apply(statements, this.start, this.end, target, mth.getMatchContext(), temp_base);
+        return statements;
+    }
+
+    public void apply(MatchedStatements mth, MethodEntry target) {
+        BlockSplice splice = new BlockSplice(mth.getBlock());
+        splice.add(mth.getIndex(), mth.getStatements(), modify(mth, target));
+        splice.apply();
     }
 
 }
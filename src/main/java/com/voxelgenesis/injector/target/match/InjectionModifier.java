@@ -32,6 +32,10 @@ import java.util.List;
 
 public interface InjectionModifier {
 
-    void apply(List<Statement> statements, int start, int end, MethodEntry target, MatchContext match);
+    /**
+     * @param temp_base The first slot of the target which temporaries of the
+     *     injected code may be placed in
+     */
+    void apply(List<Statement> statements, int start, int end, MethodEntry target, MatchContext match, int temp_base);
 
 }
@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target.match;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A description of a matcher statement which is a single call of a no-arg
+ * method on a chain of fields starting from a static field, in the form
+ * {@code Type.field.method();}. Statements of this form can be located
+ * directly in bytecode without decompiling the method.
+ */
+public class InvokeAnchor {
+
+    private final String owner;
+    private final List<String> fields;
+    private final String name;
+
+    public InvokeAnchor(String owner, List<String> fields, String name) {
+        this.owner = owner;
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+        this.name = name;
+    }
+
+    /**
+     * Gets the descriptor of the type owning the static field at the start of
+     * the chain.
+     */
+    public String getOwner() {
+        return this.owner;
+    }
+
+    /**
+     * Gets the names of the fields accessed before the invoke, the first of
+     * which is static.
+     */
+    public List<String> getFields() {
+        return this.fields;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+}
@@ -37,13 +37,15 @@ public class MatchedStatements {
     private final InjectionMatcher point;
     private final MatchContext ctx;
     private final StatementBlock block;
+    private final int index;
     private final List<Statement> matched = new ArrayList<>();
     private final List<Statement> modified = new ArrayList<>();
 
-    public MatchedStatements(InjectionMatcher point, MatchContext ctx, StatementBlock block, Collection<Statement> stmt) {
+    public MatchedStatements(InjectionMatcher point, MatchContext ctx, StatementBlock block, int index, Collection<Statement> stmt) {
         this.point = point;
         this.ctx = ctx;
         this.block = block;
+        this.index = index;
         this.matched.addAll(stmt);
     }
 
@@ -59,6 +61,14 @@ public class MatchedStatements {
         return this.block;
     }
 
+    /**
+     * Gets the index in the block of the first matched statement, as it was
+     * when the match was made.
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
     public List<Statement> getStatements() {
         return this.matched;
     }
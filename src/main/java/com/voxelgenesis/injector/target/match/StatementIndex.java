@@ -0,0 +1,185 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target.match;
+
+import org.spongepowered.despector.ast.insn.Instruction;
+import org.spongepowered.despector.ast.stmt.Statement;
+import org.spongepowered.despector.ast.stmt.StatementBlock;
+import org.spongepowered.despector.ast.stmt.assign.LocalAssignment;
+import org.spongepowered.despector.ast.stmt.branch.DoWhile;
+import org.spongepowered.despector.ast.stmt.branch.For;
+import org.spongepowered.despector.ast.stmt.branch.ForEach;
+import org.spongepowered.despector.ast.stmt.branch.If;
+import org.spongepowered.despector.ast.stmt.branch.If.Elif;
+import org.spongepowered.despector.ast.stmt.branch.Switch;
+import org.spongepowered.despector.ast.stmt.branch.Switch.Case;
+import org.spongepowered.despector.ast.stmt.branch.TryCatch;
+import org.spongepowered.despector.ast.stmt.branch.TryCatch.CatchBlock;
+import org.spongepowered.despector.ast.stmt.branch.While;
+import org.spongepowered.despector.ast.stmt.invoke.InstanceMethodInvoke;
+import org.spongepowered.despector.ast.stmt.invoke.InvokeStatement;
+import org.spongepowered.despector.ast.stmt.invoke.StaticMethodInvoke;
+import org.spongepowered.despector.ast.type.MethodEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of every statement position in a method, including those in
+ * nested blocks, by the anchor key of the statement at that position. A
+ * matcher only needs to be tried at the positions where its first statement
+ * could match.
+ */
+public class StatementIndex {
+
+    public static final String IF_KEY = "if";
+
+    public static String invokeKey(String name) {
+        return "invoke:" + name;
+    }
+
+    public static String assignKey(String type) {
+        return "assign:" + type;
+    }
+
+    /**
+     * Gets the anchor key of the given statement, or null if statements of
+     * its kind are not indexed.
+     */
+    public static String keyOf(Statement stmt) {
+        if (stmt instanceof InvokeStatement) {
+            Instruction insn = ((InvokeStatement) stmt).getInstruction();
+            if (insn instanceof InstanceMethodInvoke) {
+                return invokeKey(((InstanceMethodInvoke) insn).getMethodName());
+            } else if (insn instanceof StaticMethodInvoke) {
+                return invokeKey(((StaticMethodInvoke) insn).getMethodName());
+            }
+        } else if (stmt instanceof LocalAssignment) {
+            LocalAssignment assign = (LocalAssignment) stmt;
+            if (assign.getLocal().getType() != null) {
+                return assignKey(assign.getLocal().getType().getDescriptor());
+            }
+        } else if (stmt instanceof If) {
+            return IF_KEY;
+        }
+        return null;
+    }
+
+    private final Map<String, List<Position>> positions = new HashMap<>();
+    private final List<Position> all = new ArrayList<>();
+
+    public StatementIndex(MethodEntry mth) {
+        this(mth.getInstructions());
+    }
+
+    public StatementIndex(StatementBlock root) {
+        index(root);
+    }
+
+    private void index(StatementBlock block) {
+        for (int i = 0; i < block.size(); i++) {
+            Statement stmt = block.get(i);
+            indexNested(stmt);
+            Position pos = new Position(block, i);
+            this.all.add(pos);
+            String key = keyOf(stmt);
+            if (key != null) {
+                List<Position> list = this.positions.get(key);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    this.positions.put(key, list);
+                }
+                list.add(pos);
+            }
+        }
+    }
+
+    private void indexNested(Statement stmt) {
+        if (stmt instanceof If) {
+            If iif = (If) stmt;
+            index(iif.getBody());
+            for (Elif elif : iif.getElifBlocks()) {
+                index(elif.getBody());
+            }
+            if (iif.getElseBlock() != null) {
+                index(iif.getElseBlock().getBody());
+            }
+        } else if (stmt instanceof For) {
+            index(((For) stmt).getBody());
+        } else if (stmt instanceof ForEach) {
+            index(((ForEach) stmt).getBody());
+        } else if (stmt instanceof While) {
+            index(((While) stmt).getBody());
+        } else if (stmt instanceof DoWhile) {
+            index(((DoWhile) stmt).getBody());
+        } else if (stmt instanceof TryCatch) {
+            TryCatch ttry = (TryCatch) stmt;
+            index(ttry.getTryBlock());
+            for (CatchBlock ccatch : ttry.getCatchBlocks()) {
+                index(ccatch.getBlock());
+            }
+        } else if (stmt instanceof Switch) {
+            for (Case cs : ((Switch) stmt).getCases()) {
+                index(cs.getBody());
+            }
+        }
+    }
+
+    /**
+     * Gets the positions at which a statement with the given anchor key
+     * occurs, or every position if the key is null.
+     */
+    public List<Position> getCandidates(String key) {
+        if (key == null) {
+            return this.all;
+        }
+        List<Position> list = this.positions.get(key);
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    public static class Position {
+
+        private final StatementBlock block;
+        private final int index;
+
+        public Position(StatementBlock block, int index) {
+            this.block = block;
+            this.index = index;
+        }
+
+        public StatementBlock getBlock() {
+            return this.block;
+        }
+
+        public int getIndex() {
+            return this.index;
+        }
+
+    }
+
+}
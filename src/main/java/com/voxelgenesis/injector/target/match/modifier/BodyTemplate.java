@@ -0,0 +1,280 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target.match.modifier;
+
+import org.spongepowered.despector.ast.Locals.LocalInstance;
+import org.spongepowered.despector.ast.insn.Instruction;
+import org.spongepowered.despector.ast.insn.condition.AndCondition;
+import org.spongepowered.despector.ast.insn.condition.BooleanCondition;
+import org.spongepowered.despector.ast.insn.condition.CompareCondition;
+import org.spongepowered.despector.ast.insn.condition.Condition;
+import org.spongepowered.despector.ast.insn.condition.OrCondition;
+import org.spongepowered.despector.ast.insn.cst.NullConstant;
+import org.spongepowered.despector.ast.insn.cst.StringConstant;
+import org.spongepowered.despector.ast.insn.var.LocalAccess;
+import org.spongepowered.despector.ast.stmt.Statement;
+import org.spongepowered.despector.ast.stmt.assign.LocalAssignment;
+import org.spongepowered.despector.ast.stmt.invoke.InstanceMethodInvoke;
+import org.spongepowered.despector.ast.stmt.invoke.StaticMethodInvoke;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A part of an injector method compiled once into a tree of node factories.
+ * The lookup of how each node type is copied happens while compiling, so
+ * instantiating the template into a target only creates the new nodes.
+ *
+ * <p>The locals of the injector are holes in the template which are filled
+ * from the local translation of each application.</p>
+ */
+public final class BodyTemplate<T> {
+
+    /**
+     * Compiles the given statements of an injector into a template creating
+     * a new list of their copies.
+     */
+    public static BodyTemplate<List<Statement>> ofStatements(List<Statement> stmts) {
+        Compiler compiler = new Compiler();
+        List<Node<Statement>> nodes = new ArrayList<>();
+        for (Statement stmt : stmts) {
+            nodes.add(compiler.statement(stmt));
+        }
+        Node<List<Statement>> root = locals -> {
+            List<Statement> result = new ArrayList<>(nodes.size());
+            for (Node<Statement> node : nodes) {
+                result.add(node.build(locals));
+            }
+            return result;
+        };
+        return new BodyTemplate<>(root, compiler);
+    }
+
+    public static BodyTemplate<Instruction> ofInstruction(Instruction insn) {
+        Compiler compiler = new Compiler();
+        return new BodyTemplate<>(compiler.instruction(insn), compiler);
+    }
+
+    public static BodyTemplate<Condition> ofCondition(Condition cond) {
+        Compiler compiler = new Compiler();
+        return new BodyTemplate<>(compiler.condition(cond), compiler);
+    }
+
+    private final Node<T> root;
+    private final LocalInstance[] holes;
+
+    private BodyTemplate(Node<T> root, Compiler compiler) {
+        this.root = root;
+        this.holes = compiler.holes.toArray(new LocalInstance[compiler.holes.size()]);
+    }
+
+    /**
+     * Gets the locals of the injector referenced by this template, in the
+     * order of their holes.
+     */
+    public LocalInstance[] getHoles() {
+        return this.holes;
+    }
+
+    /**
+     * Creates a copy of the template with each of the injector's locals
+     * replaced by its translation.
+     */
+    public T instantiate(Map<LocalInstance, LocalInstance> local_translation) {
+        LocalInstance[] locals = new LocalInstance[this.holes.length];
+        for (int i = 0; i < locals.length; i++) {
+            locals[i] = local_translation.get(this.holes[i]);
+        }
+        return this.root.build(locals);
+    }
+
+    /**
+     * Creates a copy of the template with the holes filled by the given
+     * locals, in the order of {@link #getHoles()}.
+     */
+    public T instantiate(LocalInstance[] locals) {
+        if (locals.length != this.holes.length) {
+            throw new IllegalArgumentException("Expected " + this.holes.length + " locals but got " + locals.length);
+        }
+        return this.root.build(locals);
+    }
+
+    private static interface Node<T> {
+
+        T build(LocalInstance[] locals);
+
+    }
+
+    private static interface NodeCompiler<T, R> {
+
+        Node<R> compile(T val, Compiler compiler);
+
+    }
+
+    private static class Compiler {
+
+        final Map<LocalInstance, Integer> hole_indices = new HashMap<>();
+        final List<LocalInstance> holes = new ArrayList<>();
+
+        int hole(LocalInstance local) {
+            Integer index = this.hole_indices.get(local);
+            if (index == null) {
+                index = this.holes.size();
+                this.holes.add(local);
+                this.hole_indices.put(local, index);
+            }
+            return index;
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<Statement> statement(Statement stmt) {
+            NodeCompiler<Statement, Statement> comp = (NodeCompiler<Statement, Statement>) statement_compilers.get(stmt.getClass());
+            if (comp == null) {
+                throw new IllegalStateException("No translator for statement type: " + stmt.getClass().getName());
+            }
+            return comp.compile(stmt, this);
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<Instruction> instruction(Instruction insn) {
+            NodeCompiler<Instruction, Instruction> comp = (NodeCompiler<Instruction, Instruction>) instruction_compilers.get(insn.getClass());
+            if (comp == null) {
+                throw new IllegalStateException("No translator for instruction type: " + insn.getClass().getName());
+            }
+            return comp.compile(insn, this);
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<Condition> condition(Condition cond) {
+            NodeCompiler<Condition, Condition> comp = (NodeCompiler<Condition, Condition>) condition_compilers.get(cond.getClass());
+            if (comp == null) {
+                throw new IllegalStateException("No translator for condition type: " + cond.getClass().getName());
+            }
+            return comp.compile(cond, this);
+        }
+
+        Node<Instruction[]> instructions(Instruction[] insns) {
+            List<Node<Instruction>> nodes = new ArrayList<>(insns.length);
+            for (Instruction insn : insns) {
+                nodes.add(instruction(insn));
+            }
+            return locals -> {
+                Instruction[] result = new Instruction[nodes.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = nodes.get(i).build(locals);
+                }
+                return result;
+            };
+        }
+
+        Node<List<Condition>> conditions(List<Condition> conds) {
+            List<Node<Condition>> nodes = new ArrayList<>(conds.size());
+            for (Condition cond : conds) {
+                nodes.add(condition(cond));
+            }
+            return locals -> {
+                List<Condition> result = new ArrayList<>(nodes.size());
+                for (Node<Condition> node : nodes) {
+                    result.add(node.build(locals));
+                }
+                return result;
+            };
+        }
+
+    }
+
+    private static final Map<Class<?>, NodeCompiler<?, ?>> statement_compilers = new HashMap<>();
+    private static final Map<Class<?>, NodeCompiler<?, ?>> instruction_compilers = new HashMap<>();
+    private static final Map<Class<?>, NodeCompiler<?, ?>> condition_compilers = new HashMap<>();
+
+    private static <T extends Statement> void registerStatement(Class<T> type, NodeCompiler<T, Statement> comp) {
+        statement_compilers.put(type, comp);
+    }
+
+    private static <T extends Instruction> void registerInstruction(Class<T> type, NodeCompiler<T, Instruction> comp) {
+        instruction_compilers.put(type, comp);
+    }
+
+    private static <T extends Condition> void registerCondition(Class<T> type, NodeCompiler<T, Condition> comp) {
+        condition_compilers.put(type, comp);
+    }
+
+    static {
+        registerStatement(LocalAssignment.class, (stmt, c) -> {
+            int local = c.hole(stmt.getLocal());
+            Node<Instruction> value = c.instruction(stmt.getValue());
+            return locals -> new LocalAssignment(locals[local], value.build(locals));
+        });
+
+        registerInstruction(InstanceMethodInvoke.class, (insn, c) -> {
+            Node<Instruction[]> args = c.instructions(insn.getParameters());
+            Node<Instruction> callee = c.instruction(insn.getCallee());
+            String type = insn.getType();
+            String name = insn.getMethodName();
+            String desc = insn.getMethodDescription();
+            String owner = insn.getOwner();
+            return locals -> new InstanceMethodInvoke(type, name, desc, owner, args.build(locals), callee.build(locals));
+        });
+        registerInstruction(LocalAccess.class, (insn, c) -> {
+            int local = c.hole(insn.getLocal());
+            return locals -> new LocalAccess(locals[local]);
+        });
+        registerInstruction(NullConstant.class, (insn, c) -> locals -> NullConstant.NULL);
+        registerInstruction(StaticMethodInvoke.class, (insn, c) -> {
+            Node<Instruction[]> args = c.instructions(insn.getParameters());
+            String name = insn.getMethodName();
+            String desc = insn.getMethodDescription();
+            String owner = insn.getOwner();
+            return locals -> new StaticMethodInvoke(name, desc, owner, args.build(locals));
+        });
+        registerInstruction(StringConstant.class, (insn, c) -> {
+            String cst = insn.getConstant();
+            return locals -> new StringConstant(cst);
+        });
+
+        registerCondition(AndCondition.class, (cond, c) -> {
+            Node<List<Condition>> ops = c.conditions(cond.getOperands());
+            return locals -> new AndCondition(ops.build(locals));
+        });
+        registerCondition(BooleanCondition.class, (cond, c) -> {
+            Node<Instruction> val = c.instruction(cond.getConditionValue());
+            boolean inverse = cond.isInverse();
+            return locals -> new BooleanCondition(val.build(locals), inverse);
+        });
+        registerCondition(CompareCondition.class, (cond, c) -> {
+            Node<Instruction> left = c.instruction(cond.getLeft());
+            Node<Instruction> right = c.instruction(cond.getRight());
+            CompareCondition.CompareOperator op = cond.getOperator();
+            return locals -> new CompareCondition(left.build(locals), right.build(locals), op);
+        });
+        registerCondition(OrCondition.class, (cond, c) -> {
+            Node<List<Condition>> ops = c.conditions(cond.getOperands());
+            return locals -> new OrCondition(ops.build(locals));
+        });
+    }
+
+}
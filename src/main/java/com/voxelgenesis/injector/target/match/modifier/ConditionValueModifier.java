@@ -51,16 +51,19 @@ public class ConditionValueModifier implements InjectionModifier {
 
     private final MethodEntry replacement;
     private final StatementMatcher<?> matcher;
+    private final BodyTemplate<Condition> condition;
 
     public ConditionValueModifier(MethodEntry replacement, StatementMatcher<?> matcher) {
         this.replacement = replacement;
         this.matcher = matcher;
+        this.condition = BodyTemplate.ofCondition(getConditionReplace());
     }
 
     @Override
-    public void apply(List<Statement> statements, int start, int end, MethodEntry target, MatchContext match) {
-        Map<LocalInstance, LocalInstance> local_translation = StatementInsertModifier.buildLocalTranslation(target, this.replacement, match, start);
-        replaceInStatement(statements.get(start), this.matcher, StatementInsertModifier.translate(getConditionReplace(), local_translation));
+    public void apply(List<Statement> statements, int start, int end, MethodEntry target, MatchContext match, int temp_base) {
+        Map<LocalInstance, LocalInstance> local_translation = StatementInsertModifier.buildLocalTranslation(target, this.replacement, match, start,
+                temp_base);
+        replaceInStatement(statements.get(start), this.matcher, this.condition.instantiate(local_translation));
     }
 
     private Condition getConditionReplace() {
@@ -49,16 +49,19 @@ public class InstructionValueModifier implements InjectionModifier {
 
     private final MethodEntry replacement;
     private final StatementMatcher<?> matcher;
+    private final BodyTemplate<Instruction> value;
 
     public InstructionValueModifier(MethodEntry replacement, StatementMatcher<?> matcher) {
         this.replacement = replacement;
         this.matcher = matcher;
+        this.value = BodyTemplate.ofInstruction(getValueReplace());
     }
 
     @Override
-    public void apply(List<Statement> statements, int start, int end, MethodEntry target, MatchContext match) {
-        Map<LocalInstance, LocalInstance> local_translation = StatementInsertModifier.buildLocalTranslation(target, this.replacement, match, start);
-        replaceInStatement(statements.get(start), this.matcher, StatementInsertModifier.translate(getValueReplace(), local_translation));
+    public void apply(List<Statement> statements, int start, int end, MethodEntry target, MatchContext match, int temp_base) {
+        Map<LocalInstance, LocalInstance> local_translation = StatementInsertModifier.buildLocalTranslation(target, this.replacement, match, start,
+                temp_base);
+        replaceInStatement(statements.get(start), this.matcher, this.value.instantiate(local_translation));
     }
 
     private Instruction getValueReplace() {
@@ -28,24 +28,12 @@ import com.voxelgenesis.injector.target.match.InjectionModifier;
 import org.spongepowered.despector.ast.Annotation;
 import org.spongepowered.despector.ast.Locals.Local;
 import org.spongepowered.despector.ast.Locals.LocalInstance;
-import org.spongepowered.despector.ast.insn.Instruction;
-import org.spongepowered.despector.ast.insn.condition.AndCondition;
-import org.spongepowered.despector.ast.insn.condition.BooleanCondition;
-import org.spongepowered.despector.ast.insn.condition.CompareCondition;
-import org.spongepowered.despector.ast.insn.condition.Condition;
-import org.spongepowered.despector.ast.insn.condition.OrCondition;
-import org.spongepowered.despector.ast.insn.cst.NullConstant;
-import org.spongepowered.despector.ast.insn.cst.StringConstant;
-import org.spongepowered.despector.ast.insn.var.LocalAccess;
 import org.spongepowered.despector.ast.stmt.Statement;
-import org.spongepowered.despector.ast.stmt.assign.LocalAssignment;
-import org.spongepowered.despector.ast.stmt.invoke.InstanceMethodInvoke;
-import org.spongepowered.despector.ast.stmt.invoke.StaticMethodInvoke;
 import org.spongepowered.despector.ast.type.MethodEntry;
 import org.spongepowered.despector.transform.matcher.MatchContext;
 import org.spongepowered.despector.util.TypeHelper;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -53,49 +41,57 @@ import java.util.Map;
 public class StatementInsertModifier implements InjectionModifier {
 
     private final MethodEntry injector;
+    private final BodyTemplate<List<Statement>> body;
 
     public StatementInsertModifier(MethodEntry injector) {
         this.injector = injector;
+        // The trailing return of the injector is not inserted
+        List<Statement> insns = injector.getInstructions().getStatements();
+        this.body = BodyTemplate.ofStatements(insns.subList(0, insns.size() - 1));
     }
 
     @Override
-    public void apply(List<Statement> statements, int start, int end, MethodEntry target, MatchContext match) {
-        Map<LocalInstance, LocalInstance> local_translation = buildLocalTranslation(target, this.injector, match, start);
-
-        for (int i = this.injector.getInstructions().size() - 2; i >= 0; i--) {
-            Statement stmt = this.injector.getInstructions().get(i);
-            statements.add(start, translate(stmt, local_translation));
-        }
+    public void apply(List<Statement> statements, int start, int end, MethodEntry target, MatchContext match, int temp_base) {
+        Map<LocalInstance, LocalInstance> local_translation = buildLocalTranslation(target, this.injector, match, start, temp_base);
+        statements.addAll(start, this.body.instantiate(local_translation));
     }
 
-    @SuppressWarnings("unchecked")
-    public static <T extends Statement> T translate(T stmt, Map<LocalInstance, LocalInstance> local_translation) {
-        Translator<T> trans = (Translator<T>) statement_translators.get(stmt.getClass());
-        if (trans == null) {
-            throw new IllegalStateException("No translator for statement type: " + stmt.getClass().getName());
+    /**
+     * Gets the first slot above the parameters and locals of the given
+     * method. The temporaries of code injected into the method are placed
+     * from there.
+     *
+     * <p>This should be found once before a method is modified and shared by
+     * all injections into it, as the temporaries of an injection are dead once
+     * its body has run and so may share their slots with those of other
+     * injections.</p>
+     */
+    public static int firstTempLocal(MethodEntry target) {
+        int first = target.isStatic() ? 0 : 1;
+        for (String p : TypeHelper.splitSig(target.getDescription())) {
+            first += p.equals("D") || p.equals("J") ? 2 : 1;
         }
-        return trans.translate(stmt, local_translation);
-    }
-
-    @SuppressWarnings("unchecked")
-    public static <T extends Instruction> T translate(T stmt, Map<LocalInstance, LocalInstance> local_translation) {
-        Translator<T> trans = (Translator<T>) instruction_translators.get(stmt.getClass());
-        if (trans == null) {
-            throw new IllegalStateException("No translator for instruction type: " + stmt.getClass().getName());
+        for (LocalInstance instance : target.getLocals().getAllInstances()) {
+            String desc = instance.getType().getDescriptor();
+            int end = instance.getLocal().getIndex() + (desc.equals("D") || desc.equals("J") ? 2 : 1);
+            if (end > first) {
+                first = end;
+            }
         }
-        return trans.translate(stmt, local_translation);
+        return first;
     }
 
-    @SuppressWarnings("unchecked")
-    public static <T extends Condition> T translate(T stmt, Map<LocalInstance, LocalInstance> local_translation) {
-        Translator<T> trans = (Translator<T>) condition_translators.get(stmt.getClass());
-        if (trans == null) {
-            throw new IllegalStateException("No translator for condition type: " + stmt.getClass().getName());
-        }
-        return trans.translate(stmt, local_translation);
+    public static Map<LocalInstance, LocalInstance> buildLocalTranslation(MethodEntry target, MethodEntry injector, MatchContext match, int offs) {
+        return buildLocalTranslation(target, injector, match, offs, firstTempLocal(target));
     }
 
-    public static Map<LocalInstance, LocalInstance> buildLocalTranslation(MethodEntry target, MethodEntry injector, MatchContext match, int offs) {
+    /**
+     * Maps the parameters of the injector to the matched locals of the target
+     * and its temporaries to new locals of the target placed from the given
+     * slot.
+     */
+    public static Map<LocalInstance, LocalInstance> buildLocalTranslation(MethodEntry target, MethodEntry injector, MatchContext match, int offs,
+            int temp_base) {
         Map<LocalInstance, LocalInstance> local_translation = new HashMap<>();
         int local_index = 0;
         if (!injector.isStatic()) {
@@ -126,39 +122,27 @@ public class StatementInsertModifier implements InjectionModifier {
             }
         }
 
-        int highest_local = 0;
-        if (!target.isStatic()) {
-            highest_local++;
-        }
-        for (String p : TypeHelper.splitSig(target.getDescription())) {
-            highest_local++;
-            if (p.equals("D") || p.equals("J")) {
-                highest_local++;
-            }
-        }
-        for (LocalInstance instance : target.getLocals().getAllInstances()) {
-            int local = instance.getLocal().getIndex();
-            if (local > highest_local) {
-                highest_local = local;
-            }
-        }
-        highest_local++;
-        Map<Integer, Integer> local_index_mapping = new HashMap<>();
+        // The target slot of each temporary plus one, indexed by its slot in
+        // the injector above the parameters so that zero is unassigned
+        int[] temp_slots = new int[8];
+        int next_local = temp_base;
         for (LocalInstance instance : injector.getLocals().getAllInstances()) {
             if (local_translation.containsKey(instance)) {
                 continue;
             }
-            if (instance.getLocal().getIndex() < local_index) {
+            int temp = instance.getLocal().getIndex() - local_index;
+            if (temp < 0) {
                 throw new IllegalStateException();
             }
-            Integer new_index = local_index_mapping.get(instance.getLocal().getIndex());
-            if (new_index == null) {
-                new_index = highest_local++;
-                if (instance.getType().getDescriptor().equals("D") || instance.getType().getDescriptor().equals("J")) {
-                    highest_local++;
-                }
-                local_index_mapping.put(instance.getLocal().getIndex(), new_index);
+            if (temp >= temp_slots.length) {
+                temp_slots = Arrays.copyOf(temp_slots, Math.max(temp + 1, temp_slots.length * 2));
+            }
+            if (temp_slots[temp] == 0) {
+                temp_slots[temp] = next_local + 1;
+                String desc = instance.getType().getDescriptor();
+                next_local += desc.equals("D") || desc.equals("J") ? 2 : 1;
             }
+            int new_index = temp_slots[temp] - 1;
             Local new_local = target.getLocals().getLocal(new_index);
             int start = instance.getStart();
             int end = instance.getEnd() + offs;
@@ -173,79 +157,4 @@ public class StatementInsertModifier implements InjectionModifier {
         return local_translation;
     }
 
-    private static final Map<Class<?>, Translator<?>> statement_translators = new HashMap<>();
-    private static final Map<Class<?>, Translator<?>> instruction_translators = new HashMap<>();
-    private static final Map<Class<?>, Translator<?>> condition_translators = new HashMap<>();
-
-    private static <T extends Statement> void registerStatementTranslator(Class<T> type, Translator<T> trans) {
-        statement_translators.put(type, trans);
-    }
-
-    private static <T extends Instruction> void registerInstructionTranslator(Class<T> type, Translator<T> trans) {
-        instruction_translators.put(type, trans);
-    }
-
-    private static <T extends Condition> void registerConditionTranslator(Class<T> type, Translator<T> trans) {
-        condition_translators.put(type, trans);
-    }
-
-    private static interface Translator<T> {
-
-        T translate(T val, Map<LocalInstance, LocalInstance> local_translation);
-
-    }
-
-    static {
-        registerStatementTranslator(LocalAssignment.class, (stmt, locals) -> {
-            LocalInstance mapped = locals.get(stmt.getLocal());
-            return new LocalAssignment(mapped, translate(stmt.getValue(), locals));
-        });
-
-        registerInstructionTranslator(InstanceMethodInvoke.class, (insn, locals) -> {
-            Instruction[] args = new Instruction[insn.getParameters().length];
-            for (int i = 0; i < insn.getParameters().length; i++) {
-                args[i] = translate(insn.getParameters()[i], locals);
-            }
-            Instruction callee = translate(insn.getCallee(), locals);
-            return new InstanceMethodInvoke(insn.getType(), insn.getMethodName(), insn.getMethodDescription(), insn.getOwner(), args, callee);
-        });
-        registerInstructionTranslator(LocalAccess.class, (insn, locals) -> {
-            LocalInstance mapped = locals.get(insn.getLocal());
-            return new LocalAccess(mapped);
-        });
-        registerInstructionTranslator(NullConstant.class, (insn, locals) -> NullConstant.NULL);
-        registerInstructionTranslator(StaticMethodInvoke.class, (insn, locals) -> {
-            Instruction[] args = new Instruction[insn.getParameters().length];
-            for (int i = 0; i < insn.getParameters().length; i++) {
-                args[i] = translate(insn.getParameters()[i], locals);
-            }
-            return new StaticMethodInvoke(insn.getMethodName(), insn.getMethodDescription(), insn.getOwner(), args);
-        });
-        registerInstructionTranslator(StringConstant.class, (insn, locals) -> new StringConstant(insn.getConstant()));
-
-        registerConditionTranslator(AndCondition.class, (cond, locals) -> {
-            List<Condition> ops = new ArrayList<>();
-            for (Condition op : cond.getOperands()) {
-                ops.add(translate(op, locals));
-            }
-            return new AndCondition(ops);
-        });
-        registerConditionTranslator(BooleanCondition.class, (cond, locals) -> {
-            Instruction val = translate(cond.getConditionValue(), locals);
-            return new BooleanCondition(val, cond.isInverse());
-        });
-        registerConditionTranslator(CompareCondition.class, (cond, locals) -> {
-            Instruction left = translate(cond.getLeft(), locals);
-            Instruction right = translate(cond.getRight(), locals);
-            return new CompareCondition(left, right, cond.getOperator());
-        });
-        registerConditionTranslator(OrCondition.class, (cond, locals) -> {
-            List<Condition> ops = new ArrayList<>();
-            for (Condition op : cond.getOperands()) {
-                ops.add(translate(op, locals));
-            }
-            return new OrCondition(ops);
-        });
-    }
-
 }
@@ -24,8 +24,19 @@
  */
 package com.voxelgenesis.injector.target.parse;
 
+import static com.voxelgenesis.injector.target.parse.TokenType.*;
+
+import java.util.Arrays;
 import java.util.BitSet;
 
+/**
+ * Splits a matcher into tokens. Rather than creating an object per token the
+ * lexer tracks the type of the current token and its offsets into the source,
+ * and the text of a token is only created if it is asked for.
+ *
+ * <p>A lexer may also replay tokens lexed ahead of time by
+ * {@link #tokenize(String)}, in which case the source is not scanned.</p>
+ */
 public class Lexer {
 
     public static final BitSet LOWER_ALPHA;
@@ -36,189 +47,314 @@ public class Lexer {
     public static final BitSet ALPHA_NUMERIC;
     public static final BitSet IDENTIFIER;
 
-    private final String str;
+    /**
+     * Set on the type of a pre-lexed token if it is a string constant
+     * containing escapes.
+     */
+    public static final int ESCAPED_FLAG = 0x80;
+
+    private final char[] str;
     private final int length;
     private int index = 0;
+    private final int[] tokens;
+
+    // The token that has been peeked at but not yet popped
+    private int next_type = NONE;
+    private int next_start;
+    private int next_end;
+    private boolean next_escaped;
 
-    private ParseToken next = null;
+    // The last popped token
+    private int type = NONE;
+    private int start;
+    private int end;
+    private boolean escaped;
 
     public Lexer(String s) {
-        this.str = s;
-        this.length = s.length();
+        this(s, null);
+    }
+
+    /**
+     * @param tokens The tokens of the source from {@link #tokenize(String)},
+     *     or null to lex the source
+     */
+    public Lexer(String s, int[] tokens) {
+        this.str = s.toCharArray();
+        this.length = this.str.length;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Lexes the given source ahead of time. Each token is stored as three ints
+     * of its type, with {@link #ESCAPED_FLAG} set if needed, and the offsets of
+     * its start and end.
+     */
+    public static int[] tokenize(String s) {
+        Lexer lexer = new Lexer(s);
+        int[] tokens = new int[48];
+        int count = 0;
+        while (lexer.hasNext()) {
+            lexer.pop();
+            if (count + 3 > tokens.length) {
+                tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            }
+            tokens[count++] = lexer.type | (lexer.escaped ? ESCAPED_FLAG : 0);
+            tokens[count++] = lexer.start;
+            tokens[count++] = lexer.end;
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    private char charAt(int i) {
+        // The end of the input reads as a space so that a token running to
+        // the end is terminated like any other.
+        return i < this.length ? this.str[i] : ' ';
     }
 
     private void check() {
-        if (this.next != null) {
+        if (this.next_type != NONE) {
             return;
         }
-        if (this.index >= this.length) {
+        if (this.tokens != null) {
+            if (this.index < this.tokens.length) {
+                this.next_type = this.tokens[this.index] & ~ESCAPED_FLAG;
+                this.next_escaped = (this.tokens[this.index] & ESCAPED_FLAG) != 0;
+                this.next_start = this.tokens[this.index + 1];
+                this.next_end = this.tokens[this.index + 2];
+                this.index += 3;
+            }
             return;
         }
-        char n = this.str.charAt(this.index++);
-        while (Character.isWhitespace(n) && this.index < this.length) {
-            n = this.str.charAt(this.index++);
+        int i = this.index;
+        while (i < this.length && Character.isWhitespace(this.str[i])) {
+            i++;
+        }
+        if (i >= this.length) {
+            this.index = i;
+            return;
         }
+        char n = this.str[i];
+        this.next_start = i;
+        this.next_escaped = false;
         if (ALPHA.get(n)) {
-            StringBuilder token = new StringBuilder();
-            token.append(n);
-            n = this.str.charAt(this.index++);
-            while (IDENTIFIER.get(n)) {
-                token.append(n);
-                n = this.str.charAt(this.index++);
+            i++;
+            while (IDENTIFIER.get(charAt(i))) {
+                i++;
             }
-            this.index--;
-            this.next = new ParseToken(TokenType.IDENTIFIER, token.toString());
+            // Qualified as the IDENTIFIER character set shadows the import
+            this.next_type = TokenType.IDENTIFIER;
+            this.next_end = i;
         } else if (NUMERIC.get(n)) {
-            StringBuilder token = new StringBuilder();
-            token.append(n);
-            n = this.str.charAt(this.index++);
-            if (n == 'x') {
-                token.append(n);
-                n = this.str.charAt(this.index++);
-                while (HEXNUMBER.get(n)) {
-                    token.append(n);
-                    n = this.str.charAt(this.index++);
+            i++;
+            if (charAt(i) == 'x') {
+                i++;
+                while (HEXNUMBER.get(charAt(i))) {
+                    i++;
                 }
-                this.index--;
-                this.next = new ParseToken(TokenType.HEXADECIMAL, token.toString());
-            }
-            while (NUMERIC.get(n)) {
-                token.append(n);
-                n = this.str.charAt(this.index++);
-            }
-            if (n == 'L') {
-                this.next = new ParseToken(TokenType.LONG, token.toString());
-            } else if (n == '.') {
-                token.append(n);
-                n = this.str.charAt(this.index++);
-                while (NUMERIC.get(n)) {
-                    token.append(n);
-                    n = this.str.charAt(this.index++);
+                this.next_type = HEXADECIMAL;
+                this.next_end = i;
+            } else {
+                while (NUMERIC.get(charAt(i))) {
+                    i++;
                 }
-                if (n == 'F' || n == 'f') {
-                    this.next = new ParseToken(TokenType.FLOAT, token.toString());
-                } else if (n == 'D' || n == 'd') {
-                    this.next = new ParseToken(TokenType.DOUBLE, token.toString());
+                this.next_end = i;
+                n = charAt(i);
+                if (n == 'L') {
+                    this.next_type = LONG;
+                    i++;
+                } else if (n == '.') {
+                    i++;
+                    while (NUMERIC.get(charAt(i))) {
+                        i++;
+                    }
+                    this.next_end = i;
+                    n = charAt(i);
+                    if (n == 'F' || n == 'f') {
+                        this.next_type = FLOAT;
+                        i++;
+                    } else {
+                        if (n == 'D' || n == 'd') {
+                            i++;
+                        }
+                        this.next_type = DOUBLE;
+                    }
                 } else {
-                    this.index--;
-                    this.next = new ParseToken(TokenType.DOUBLE, token.toString());
+                    this.next_type = INTEGER;
                 }
-            } else {
-                this.index--;
-                this.next = new ParseToken(TokenType.INTEGER, token.toString());
             }
         } else if (n == '"') {
-            StringBuilder str = new StringBuilder();
-            n = this.str.charAt(this.index++);
-            while (n != '"') {
-                if (n == '\\') {
-                    n = this.str.charAt(this.index++);
-                    switch (n) {
-                    case '"':
-                        str.append('"');
-                        break;
-                    case 'n':
-                        str.append('\n');
-                        break;
-                    case 't':
-                        str.append('\t');
-                        break;
-                    case 'r':
-                        str.append('\r');
-                        break;
-                    case 'b':
-                        str.append('\b');
-                        break;
-                    case 'f':
-                        str.append('\f');
-                        break;
-                    case '\\':
-                        str.append('\\');
-                        break;
-                    case '\'':
-                        str.append('\'');
-                        break;
-                    default:
-                        throw new IllegalStateException("Invalid escape char in stringF '" + n + "'");
-                    }
-                    continue;
+            i++;
+            this.next_start = i;
+            while (i < this.length && this.str[i] != '"') {
+                if (this.str[i] == '\\') {
+                    i++;
+                    unescape(charAt(i));
+                    this.next_escaped = true;
                 }
-                str.append(n);
-                n = this.str.charAt(this.index++);
+                i++;
             }
-            this.next = new ParseToken(TokenType.STRING_CONSTANT, str.toString());
+            if (i >= this.length) {
+                throw new IllegalStateException("Unterminated string constant");
+            }
+            this.next_type = STRING_CONSTANT;
+            this.next_end = i;
+            i++;
         } else {
+            i++;
+            this.next_end = i;
             switch (n) {
             case '$':
-                this.next = new ParseToken(TokenType.INJECTION_TOKEN);
+                this.next_type = INJECTION_TOKEN;
                 break;
             case ';':
-                this.next = new ParseToken(TokenType.SEMICOLON);
+                this.next_type = SEMICOLON;
                 break;
             case '.':
-                this.next = new ParseToken(TokenType.DOT);
+                this.next_type = DOT;
                 break;
             case ',':
-                this.next = new ParseToken(TokenType.COMMA);
+                this.next_type = COMMA;
                 break;
             case ':':
-                this.next = new ParseToken(TokenType.COLON);
+                this.next_type = COLON;
                 break;
             case '(':
-                this.next = new ParseToken(TokenType.LEFT_PAREN);
+                this.next_type = LEFT_PAREN;
                 break;
             case ')':
-                this.next = new ParseToken(TokenType.RIGHT_PAREN);
+                this.next_type = RIGHT_PAREN;
                 break;
             case '/':
-                this.next = new ParseToken(TokenType.FORWARD_SLASH);
+                this.next_type = FORWARD_SLASH;
                 break;
-            case '=': {
-                char nn = this.str.charAt(this.index);
-                if (nn == '=') {
-                    this.index++;
-                    this.next = new ParseToken(TokenType.COMPARE_EQUALS);
+            case '=':
+                if (charAt(i) == '=') {
+                    i++;
+                    this.next_type = COMPARE_EQUALS;
                 } else {
-                    this.next = new ParseToken(TokenType.EQUALS);
+                    this.next_type = EQUALS;
                 }
                 break;
-            }
-            case '!': {
-                char nn = this.str.charAt(this.index);
-                if (nn == '=') {
-                    this.index++;
-                    this.next = new ParseToken(TokenType.NOT_EQUALS);
+            case '!':
+                if (charAt(i) == '=') {
+                    i++;
+                    this.next_type = NOT_EQUALS;
                 } else {
-                    this.next = new ParseToken(TokenType.NOT);
+                    this.next_type = NOT;
                 }
                 break;
-            }
             default:
                 throw new IllegalStateException("Unexpected symbol '" + n + "'");
             }
+            this.next_end = i;
+        }
+        this.index = i;
+    }
+
+    private static char unescape(char n) {
+        switch (n) {
+        case '"':
+            return '"';
+        case 'n':
+            return '\n';
+        case 't':
+            return '\t';
+        case 'r':
+            return '\r';
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case '\\':
+            return '\\';
+        case '\'':
+            return '\'';
+        default:
+            throw new IllegalStateException("Invalid escape char in string '" + n + "'");
         }
     }
 
     public boolean hasNext() {
         check();
-        return this.next != null;
+        return this.next_type != NONE;
     }
 
-    public TokenType peekType() {
+    /**
+     * Gets the type of the next token without consuming it, or
+     * {@link TokenType#NONE} if there are no more tokens.
+     */
+    public int peekType() {
         check();
-        return this.next == null ? null : this.next.getType();
+        return this.next_type;
     }
 
-    public ParseToken peek() {
+    /**
+     * Consumes the next token, making it the current token, and returns its
+     * type.
+     */
+    public int pop() {
         check();
-        return this.next;
+        this.type = this.next_type;
+        this.start = this.next_start;
+        this.end = this.next_end;
+        this.escaped = this.next_escaped;
+        this.next_type = NONE;
+        return this.type;
     }
 
-    public ParseToken pop() {
-        check();
-        ParseToken n = this.next;
-        this.next = null;
-        return n;
+    public int getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the offset of the start of the current token in the source. For
+     * string constants this excludes the quotes.
+     */
+    public int getStart() {
+        return this.start;
+    }
+
+    public int getEnd() {
+        return this.end;
+    }
+
+    /**
+     * Creates the text of the current token, with any escapes in a string
+     * constant resolved.
+     */
+    public String getText() {
+        if (!this.escaped) {
+            return new String(this.str, this.start, this.end - this.start);
+        }
+        StringBuilder text = new StringBuilder(this.end - this.start);
+        for (int i = this.start; i < this.end; i++) {
+            char n = this.str[i];
+            if (n == '\\') {
+                n = unescape(this.str[++i]);
+            }
+            text.append(n);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Checks if the text of the current token is the given string without
+     * creating the text.
+     */
+    public boolean textEquals(String s) {
+        if (this.escaped) {
+            return getText().equals(s);
+        }
+        int len = this.end - this.start;
+        if (len != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (this.str[this.start + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     static {
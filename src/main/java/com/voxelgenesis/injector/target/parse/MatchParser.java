@@ -26,13 +26,13 @@ package com.voxelgenesis.injector.target.parse;
 
 import static com.voxelgenesis.injector.target.parse.TokenType.*;
 
-import com.voxelgenesis.injector.target.match.InjectionMatcher;
-import com.voxelgenesis.injector.target.match.InjectionModifier;
+import com.voxelgenesis.injector.target.match.BytecodeAnchors;
+import com.voxelgenesis.injector.target.match.CompiledMatcher;
+import com.voxelgenesis.injector.target.match.CompiledMatcher.ModifierType;
+import com.voxelgenesis.injector.target.match.InvokeAnchor;
+import com.voxelgenesis.injector.target.match.StatementIndex;
 import com.voxelgenesis.injector.target.match.modifier.ConditionReplaceMatcher;
-import com.voxelgenesis.injector.target.match.modifier.ConditionValueModifier;
 import com.voxelgenesis.injector.target.match.modifier.InstructionReplaceMatcher;
-import com.voxelgenesis.injector.target.match.modifier.InstructionValueModifier;
-import com.voxelgenesis.injector.target.match.modifier.StatementInsertModifier;
 import org.spongepowered.despector.ast.generic.ClassTypeSignature;
 import org.spongepowered.despector.ast.insn.Instruction;
 import org.spongepowered.despector.ast.insn.condition.CompareCondition.CompareOperator;
@@ -40,7 +40,6 @@ import org.spongepowered.despector.ast.insn.condition.Condition;
 import org.spongepowered.despector.ast.stmt.Statement;
 import org.spongepowered.despector.ast.stmt.branch.If;
 import org.spongepowered.despector.ast.stmt.misc.Return;
-import org.spongepowered.despector.ast.type.MethodEntry;
 import org.spongepowered.despector.transform.matcher.ConditionMatcher;
 import org.spongepowered.despector.transform.matcher.InstructionMatcher;
 import org.spongepowered.despector.transform.matcher.MatchContext;
@@ -56,17 +55,25 @@ import java.util.Map;
 public class MatchParser {
 
     private final Lexer lexer;
-    private final MethodEntry injector;
 
     private ModifierType modifier_type;
     private int index = 0;
     private int start, end;
+    private InvokeAnchor statement_anchor;
+    private String statement_key;
+    private final BytecodeAnchors anchors = new BytecodeAnchors();
 
     private final Map<String, String> imports = new HashMap<>();
 
-    public MatchParser(String str, MethodEntry mth) {
-        this.lexer = new Lexer(str);
-        this.injector = mth;
+    public MatchParser(String str) {
+        this(str, null);
+    }
+
+    /**
+     * @param tokens The tokens of the matcher lexed ahead of time, or null
+     */
+    public MatchParser(String str, int[] tokens) {
+        this.lexer = new Lexer(str, tokens);
 
         this.imports.put("String", "Ljava/lang/String;");
     }
@@ -75,54 +82,57 @@ public class MatchParser {
         this.imports.put(key, clazz);
     }
 
+    public void addImports(Map<String, String> imports) {
+        this.imports.putAll(imports);
+    }
+
     private void error(String msg) {
         // TODO add line and character information for debugging
         throw new IllegalStateException(msg);
     }
 
-    private ParseToken expect(TokenType type) {
-        ParseToken actual = this.lexer.pop();
-        if (actual.getType() != type) {
-            error("Expected " + type.name() + " but whats " + actual.getType().name());
+    private void expect(int type) {
+        int actual = this.lexer.pop();
+        if (actual != type) {
+            error("Expected " + TokenType.name(type) + " but whats " + TokenType.name(actual));
         }
-        return actual;
     }
 
-    public InjectionMatcher parse() {
+    public CompiledMatcher parse() {
         List<StatementMatcher<?>> matchers = new ArrayList<>();
+        List<InvokeAnchor> anchors = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
 
         while (this.lexer.hasNext()) {
             this.index = matchers.size();
+            this.statement_anchor = null;
+            this.statement_key = null;
             StatementMatcher<?> next = parseStatement();
             if (next != null) {
                 matchers.add(next);
+                anchors.add(this.statement_anchor);
+                keys.add(this.statement_key);
             }
         }
-        InjectionModifier modifier = null;
-        switch (this.modifier_type) {
-        case INSTRUCTION_REPLACE:
-            modifier = new InstructionValueModifier(this.injector, matchers.get(this.start));
-            break;
-        case CONDITION_REPLACE:
-            modifier = new ConditionValueModifier(this.injector, matchers.get(this.start));
-            break;
-        case STATEMENT_INSERT:
-            modifier = new StatementInsertModifier(this.injector);
-            break;
-        default:
-            throw new IllegalStateException();
+        if (this.modifier_type == null) {
+            error("Matcher has no injection point");
         }
 
-        return new InjectionMatcher(matchers, modifier, this.start, this.end);
+        InvokeAnchor anchor = null;
+        if (this.modifier_type == ModifierType.STATEMENT_INSERT && matchers.size() == 1) {
+            anchor = anchors.get(0);
+        }
+        return new CompiledMatcher(matchers, this.modifier_type, this.start, this.end, anchor, keys.isEmpty() ? null : keys.get(0), this.anchors);
     }
 
     private StatementMatcher<?> parseStatement() {
         if (this.lexer.peekType() == IDENTIFIER) {
-            ParseToken first = this.lexer.pop();
-            if (first.getToken().equals("if")) {
+            this.lexer.pop();
+            if (this.lexer.textEquals("if")) {
                 expect(LEFT_PAREN);
                 ConditionMatcher<?> condition = parseCondition();
                 expect(RIGHT_PAREN);
+                this.statement_key = StatementIndex.IF_KEY;
                 if (!this.lexer.hasNext()) {
                     return StatementMatcher.ifThen().condition(condition).build();
                 }
@@ -132,25 +142,30 @@ public class MatchParser {
                 throw new IllegalStateException(); // TODO
             }
             String type = null;
-            if (this.lexer.peekType() == TokenType.FORWARD_SLASH) {
-                StringBuilder str = new StringBuilder("L").append(first.getToken());
+            String first = this.lexer.getText();
+            if (this.lexer.peekType() == FORWARD_SLASH) {
+                StringBuilder str = new StringBuilder("L").append(first);
                 while (this.lexer.peekType() == FORWARD_SLASH) {
                     this.lexer.pop();
-                    ParseToken next = expect(TokenType.IDENTIFIER);
-                    str.append("/").append(next.getToken());
+                    expect(IDENTIFIER);
+                    str.append("/").append(this.lexer.getText());
                 }
                 str.append(";");
                 type = str.toString();
             } else {
-                type = this.imports.get(first.getToken());
+                type = this.imports.get(first);
             }
             if (this.lexer.peekType() == IDENTIFIER) {
-                ParseToken name = this.lexer.pop();
+                this.lexer.pop();
+                String name = this.lexer.getText();
                 if (this.lexer.peekType() == EQUALS) {
                     this.lexer.pop();
                     InstructionMatcher<?> val = parseInstruction();
                     expect(SEMICOLON);
-                    return MatchContext.storeLocal(name.getToken(),
+                    if (type != null) {
+                        this.statement_key = StatementIndex.assignKey(type);
+                    }
+                    return MatchContext.storeLocal(name,
                             StatementMatcher.localAssign().type(ClassTypeSignature.of(type.toString())).value(val).build());
                 }
                 throw new IllegalStateException();
@@ -159,19 +174,34 @@ public class MatchParser {
                 throw new IllegalStateException();
             }
             InstructionMatcher<?> owner = null;
+            List<String> fields = new ArrayList<>();
+            String invoked = null;
+            boolean simple = true;
             while (this.lexer.peekType() == DOT) {
                 this.lexer.pop();
-                ParseToken next = expect(IDENTIFIER);
+                expect(IDENTIFIER);
+                String next = this.lexer.getText();
                 if (this.lexer.peekType() == DOT) {
+                    if (invoked != null) {
+                        simple = false;
+                    }
+                    fields.add(next);
+                    this.anchors.addField(next);
                     if (owner == null) {
-                        owner = InstructionMatcher.staticFieldAccess().owner(ClassTypeSignature.of(type.toString())).name(next.getToken()).build();
+                        owner = InstructionMatcher.staticFieldAccess().owner(ClassTypeSignature.of(type.toString())).name(next).build();
                     } else {
-                        owner = InstructionMatcher.instanceFieldAccess().owner(owner).name(next.getToken()).build();
+                        owner = InstructionMatcher.instanceFieldAccess().owner(owner).name(next).build();
                     }
                 } else if (this.lexer.peekType() == LEFT_PAREN) {
                     this.lexer.pop();
-                    InstanceMethodInvokeMatcher.Builder mth = InstructionMatcher.instanceMethodInvoke().callee(owner).name(next.getToken());
+                    InstanceMethodInvokeMatcher.Builder mth = InstructionMatcher.instanceMethodInvoke().callee(owner).name(next);
+                    if (invoked != null) {
+                        simple = false;
+                    }
+                    invoked = next;
+                    this.anchors.addMethod(invoked);
                     if (this.lexer.peekType() != RIGHT_PAREN) {
+                        simple = false;
                         int param_index = 0;
                         while (true) {
                             InstructionMatcher<?> param = parseInstruction();
@@ -184,9 +214,17 @@ public class MatchParser {
                     }
                     expect(RIGHT_PAREN);
                     owner = mth.build();
+                } else {
+                    simple = false;
                 }
             }
             expect(SEMICOLON);
+            if (invoked != null) {
+                this.statement_key = StatementIndex.invokeKey(invoked);
+            }
+            if (simple && invoked != null && !fields.isEmpty()) {
+                this.statement_anchor = new InvokeAnchor(type, fields, invoked);
+            }
             return StatementMatcher.invoke().value(owner).build();
         } else if (this.lexer.peekType() == INJECTION_TOKEN) {
             this.lexer.pop();
@@ -216,13 +254,13 @@ public class MatchParser {
             error("Expected injection child");
         }
         InstructionMatcher<?> left = parseInstruction();
-        ParseToken operator = this.lexer.pop();
+        int operator = this.lexer.pop();
         InstructionMatcher<?> right = parseInstruction();
-        switch (operator.getType()) {
+        switch (operator) {
         case NOT_EQUALS:
             return ConditionMatcher.compare().operator(CompareOperator.NOT_EQUAL).left(left).right(right).build();
         default:
-            error("Invalid condition operator: " + operator.getType().name());
+            error("Invalid condition operator: " + TokenType.name(operator));
         }
         error("Expected condition");
         return null;
@@ -244,24 +282,20 @@ public class MatchParser {
             error("Expected injection child");
         }
         if (this.lexer.peekType() == STRING_CONSTANT) {
-            ParseToken next = this.lexer.pop();
-            return InstructionMatcher.stringConstant().value(next.getToken()).build();
+            this.lexer.pop();
+            String value = this.lexer.getText();
+            this.anchors.addString(value);
+            return InstructionMatcher.stringConstant().value(value).build();
         }
         if (this.lexer.peekType() == IDENTIFIER) {
-            ParseToken next = this.lexer.pop();
-            if (next.getToken().equals("null")) {
+            this.lexer.pop();
+            if (this.lexer.textEquals("null")) {
                 return InstructionMatcher.nullConstant().build();
             }
-            return InstructionMatcher.localAccess().allowMissing().fromContext(next.getToken()).build();
+            return InstructionMatcher.localAccess().allowMissing().fromContext(this.lexer.getText()).build();
         }
         error("Expected instruction");
         return null;
     }
 
-    private static enum ModifierType {
-        INSTRUCTION_REPLACE,
-        CONDITION_REPLACE,
-        STATEMENT_INSERT
-    }
-
 }
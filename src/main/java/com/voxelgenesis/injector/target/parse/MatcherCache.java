@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target.parse;
+
+import com.voxelgenesis.injector.target.match.CompiledMatcher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches compiled matchers by their text and imports, so that a matcher
+ * repeated across many injectors is only parsed once.
+ */
+public final class MatcherCache {
+
+    private static final ConcurrentMap<Key, CompiledMatcher> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the compiled form of the given matcher, parsing it if it has not
+     * been seen with the same imports before.
+     *
+     * @param imports The imported simple names mapped to type descriptors
+     */
+    public static CompiledMatcher get(String matcher, Map<String, String> imports) {
+        return get(matcher, imports, null);
+    }
+
+    /**
+     * @param tokens The tokens of the matcher lexed ahead of time, or null
+     */
+    public static CompiledMatcher get(String matcher, Map<String, String> imports, int[] tokens) {
+        Key key = new Key(matcher, imports);
+        CompiledMatcher compiled = cache.get(key);
+        if (compiled == null) {
+            MatchParser parser = new MatchParser(matcher, tokens);
+            parser.addImports(imports);
+            compiled = parser.parse();
+            CompiledMatcher existing = cache.putIfAbsent(key, compiled);
+            if (existing != null) {
+                compiled = existing;
+            }
+        }
+        return compiled;
+    }
+
+    public static int size() {
+        return cache.size();
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static class Key {
+
+        private final String matcher;
+        private final Map<String, String> imports;
+        private final int hash;
+
+        Key(String matcher, Map<String, String> imports) {
+            this.matcher = matcher;
+            this.imports = imports.isEmpty() ? Collections.emptyMap() : new HashMap<>(imports);
+            this.hash = matcher.hashCode() * 31 + this.imports.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return this.hash == k.hash && this.matcher.equals(k.matcher) && this.imports.equals(k.imports);
+        }
+
+    }
+
+    private MatcherCache() {
+    }
+
+}
@@ -24,27 +24,67 @@
  */
 package com.voxelgenesis.injector.target.parse;
 
-public enum TokenType {
-    INJECTION_TOKEN,
-
-    IDENTIFIER,
-    INTEGER,
-    LONG,
-    FLOAT,
-    DOUBLE,
-    HEXADECIMAL,
-    STRING_CONSTANT,
-
-    EQUALS,
-    DOT,
-    COMMA,
-    SEMICOLON,
-    COLON,
-    RIGHT_PAREN,
-    LEFT_PAREN,
-    FORWARD_SLASH,
-
-    COMPARE_EQUALS,
-    NOT_EQUALS,
-    NOT,
+/**
+ * The types of the tokens produced by the {@link Lexer}. Token types are
+ * plain ints so that lexing does not need an object per token.
+ */
+public final class TokenType {
+
+    public static final int NONE = -1;
+
+    public static final int INJECTION_TOKEN = 0;
+
+    public static final int IDENTIFIER = 1;
+    public static final int INTEGER = 2;
+    public static final int LONG = 3;
+    public static final int FLOAT = 4;
+    public static final int DOUBLE = 5;
+    public static final int HEXADECIMAL = 6;
+    public static final int STRING_CONSTANT = 7;
+
+    public static final int EQUALS = 8;
+    public static final int DOT = 9;
+    public static final int COMMA = 10;
+    public static final int SEMICOLON = 11;
+    public static final int COLON = 12;
+    public static final int RIGHT_PAREN = 13;
+    public static final int LEFT_PAREN = 14;
+    public static final int FORWARD_SLASH = 15;
+
+    public static final int COMPARE_EQUALS = 16;
+    public static final int NOT_EQUALS = 17;
+    public static final int NOT = 18;
+
+    private static final String[] NAMES = {
+        "INJECTION_TOKEN",
+        "IDENTIFIER",
+        "INTEGER",
+        "LONG",
+        "FLOAT",
+        "DOUBLE",
+        "HEXADECIMAL",
+        "STRING_CONSTANT",
+        "EQUALS",
+        "DOT",
+        "COMMA",
+        "SEMICOLON",
+        "COLON",
+        "RIGHT_PAREN",
+        "LEFT_PAREN",
+        "FORWARD_SLASH",
+        "COMPARE_EQUALS",
+        "NOT_EQUALS",
+        "NOT",
+    };
+
+    public static String name(int type) {
+        if (type == NONE) {
+            return "END";
+        }
+        return NAMES[type];
+    }
+
+    private TokenType() {
+    }
+
 }
@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.tool;
+
+import com.voxelgenesis.injector.InjectionManager;
+import com.voxelgenesis.injector.TargetIndex;
+import com.voxelgenesis.injector.config.ConfigManager;
+import com.voxelgenesis.injector.config.InjectorConfig;
+import com.voxelgenesis.injector.target.InjectorDescriptor;
+import com.voxelgenesis.injector.target.TypeInjector;
+import com.voxelgenesis.injector.transform.TypeTransformer;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.ZipEntry;
+
+/**
+ * Applies injectors to every matching class of a jar ahead of time, writing
+ * a patched jar that needs no transformer at runtime.
+ *
+ * <p>Usage: {@code OfflineInjector <input jar> <output jar> <injectors...>}
+ * where each injector path is a class file, a directory of class files or a
+ * jar.</p>
+ */
+public class OfflineInjector {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: OfflineInjector <input jar> <output jar> <injectors...>");
+            System.exit(1);
+        }
+        for (int i = 2; i < args.length; i++) {
+            registerInjectors(Paths.get(args[i]));
+        }
+        InjectorConfig.TransformConfig config = ConfigManager.getConfig().transform;
+        OfflineInjector tool = new OfflineInjector(InjectionManager.get().seal(), new TypeTransformer(config.partial_decompile, config.bytecode_backend),
+                Runtime.getRuntime().availableProcessors());
+        int failed = tool.inject(new File(args[0]), new File(args[1]));
+        if (failed > 0) {
+            System.err.println(failed + " classes failed to transform");
+            System.exit(1);
+        }
+    }
+
+    private static void registerInjectors(Path path) throws IOException {
+        if (Files.isDirectory(path) || path.toString().endsWith(".jar")) {
+            InjectionManager.get().addInjectors(path);
+        } else {
+            InjectionManager.get().addInjector(path.toString(), Files.readAllBytes(path), readDescriptor(path));
+        }
+    }
+
+    private static byte[] readDescriptor(Path class_file) throws IOException {
+        String name = class_file.getFileName().toString();
+        Path descriptor = class_file.resolveSibling(name.substring(0, name.length() - ".class".length()) + InjectorDescriptor.EXTENSION);
+        return Files.isRegularFile(descriptor) ? Files.readAllBytes(descriptor) : null;
+    }
+
+    private final TargetIndex index;
+    private final TypeTransformer transformer;
+    private final int parallelism;
+
+    public OfflineInjector(TargetIndex index, TypeTransformer transformer, int parallelism) {
+        this.index = index;
+        this.transformer = transformer;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Writes a copy of the input jar with all targets transformed to the
+     * output. Entries which are not targets are copied without being
+     * inflated. Returns the number of targets which failed to transform,
+     * those are copied unchanged.
+     */
+    public int inject(File input, File output) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, this.parallelism));
+        try (ZipFile jar = new ZipFile(input)) {
+            Map<String, ForkJoinTask<byte[]>> tasks = new HashMap<>();
+            Enumeration<ZipArchiveEntry> entries = jar.getEntries();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class")) {
+                    continue;
+                }
+                String class_name = name.substring(0, name.length() - 6).replace('/', '.');
+                TypeInjector injection = this.index.get(class_name);
+                if (injection == null) {
+                    continue;
+                }
+                byte[] data;
+                try (InputStream in = jar.getInputStream(entry)) {
+                    data = IOUtils.toByteArray(in);
+                }
+                tasks.put(name, pool.submit(() -> {
+                    try {
+                        return this.transformer.transform(injection, data);
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Error transforming " + class_name);
+                        e.printStackTrace();
+                        return null;
+                    }
+                }));
+            }
+
+            int failed = 0;
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(output)) {
+                entries = jar.getEntriesInPhysicalOrder();
+                while (entries.hasMoreElements()) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    ForkJoinTask<byte[]> task = tasks.get(entry.getName());
+                    byte[] transformed = task == null ? null : task.join();
+                    if (task != null && transformed == null) {
+                        failed++;
+                    }
+                    if (transformed == null) {
+                        out.addRawArchiveEntry(entry, jar.getRawInputStream(entry));
+                        continue;
+                    }
+                    ZipArchiveEntry patched = new ZipArchiveEntry(entry.getName());
+                    patched.setMethod(ZipEntry.DEFLATED);
+                    patched.setTime(entry.getTime());
+                    out.putArchiveEntry(patched);
+                    out.write(transformed);
+                    out.closeArchiveEntry();
+                }
+            }
+            return failed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
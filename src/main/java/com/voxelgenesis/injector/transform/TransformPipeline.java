@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.transform;
+
+import com.google.common.hash.HashCode;
+import com.voxelgenesis.injector.cache.MemoryCache;
+import com.voxelgenesis.injector.cache.TransformCache;
+import com.voxelgenesis.injector.config.InjectorConfig;
+import com.voxelgenesis.injector.metrics.TransformEvents;
+import com.voxelgenesis.injector.metrics.TransformMetrics;
+import com.voxelgenesis.injector.metrics.TransformRecord;
+import com.voxelgenesis.injector.target.TypeInjector;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Transforms target classes through the in-memory and on-disk caches,
+ * falling back to running the {@link TypeTransformer}.
+ */
+public class TransformPipeline {
+
+    private static final TransformRecord EMPTY_RECORD = new TransformRecord();
+
+    private final TypeTransformer transformer;
+    private final TransformCache cache;
+    private final MemoryCache memory_cache;
+
+    public TransformPipeline(InjectorConfig config, MemoryCache memory_cache) {
+        this.transformer = new TypeTransformer(config.transform.partial_decompile, config.transform.bytecode_backend);
+        this.cache = config.cache.enabled ? new TransformCache(Paths.get(config.cache.directory)) : null;
+        this.memory_cache = memory_cache;
+    }
+
+    public TypeTransformer getTransformer() {
+        return this.transformer;
+    }
+
+    /**
+     * Transforms the given target class. If the class fails to transform the
+     * error is logged and the original bytes are returned.
+     */
+    public byte[] transform(String name, TypeInjector injection, byte[] data) {
+        TransformMetrics metrics = TransformMetrics.get();
+        long start = System.nanoTime();
+        Object event = TransformEvents.beginClass();
+        HashCode input = TransformCache.hash(data);
+        if (this.memory_cache != null) {
+            byte[] cached = this.memory_cache.get(name, input);
+            if (cached != null) {
+                metrics.recordCacheHit(name, data.length, cached.length, System.nanoTime() - start);
+                TransformEvents.commitClass(event, name, "cached", data.length, cached.length, EMPTY_RECORD);
+                return cached;
+            }
+        }
+        HashCode key = null;
+        if (this.cache != null) {
+            key = TransformCache.key(input, injection.getFingerprint(), this.transformer.isPartial(), this.transformer.isBytecode());
+            if (this.cache.isFailed(key)) {
+                metrics.recordCacheHit(name, data.length, data.length, System.nanoTime() - start);
+                TransformEvents.commitClass(event, name, "cached", data.length, data.length, EMPTY_RECORD);
+                return data;
+            }
+            byte[] cached = this.cache.get(key);
+            if (cached != null) {
+                if (this.memory_cache != null) {
+                    this.memory_cache.put(name, input, cached);
+                }
+                metrics.recordCacheHit(name, data.length, cached.length, System.nanoTime() - start);
+                TransformEvents.commitClass(event, name, "cached", data.length, cached.length, EMPTY_RECORD);
+                return cached;
+            }
+        }
+        TransformRecord record = new TransformRecord();
+        try {
+            byte[] transformed = this.transformer.transform(injection, data, record);
+            if (key != null) {
+                this.cache.put(key, transformed);
+            }
+            if (this.memory_cache != null) {
+                this.memory_cache.put(name, input, transformed);
+            }
+            metrics.recordTransform(name, record, data.length, transformed.length, System.nanoTime() - start);
+            TransformEvents.commitClass(event, name, "transformed", data.length, transformed.length, record);
+            return transformed;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error transforming " + name);
+            e.printStackTrace();
+            // Only a failure of the transform itself will happen again for the
+            // same input, an I/O error may be transient and is retried on the
+            // next load.
+            if (key != null && e instanceof RuntimeException) {
+                this.cache.putFailed(key);
+            }
+            metrics.recordFailure(name, record, data.length, System.nanoTime() - start);
+            TransformEvents.commitClass(event, name, "failed", data.length, data.length, record);
+            return data;
+        }
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.transform;
+
+import com.voxelgenesis.injector.metrics.Phase;
+import com.voxelgenesis.injector.metrics.TransformEvents;
+import com.voxelgenesis.injector.metrics.TransformRecord;
+import com.voxelgenesis.injector.target.InjectionTarget;
+import com.voxelgenesis.injector.target.TypeInjector;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.spongepowered.despector.ast.SourceSet;
+import org.spongepowered.despector.ast.type.TypeEntry;
+import org.spongepowered.despector.decompiler.Decompilers;
+import org.spongepowered.despector.emitter.Emitters;
+import org.spongepowered.despector.emitter.bytecode.BytecodeEmitterContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a {@link TypeInjector} over the bytes of its target class.
+ */
+public class TypeTransformer {
+
+    // The decompiler is a shared instance with a single queue of pending
+    // tasks, so only one class may be decompiled at a time. Applying the
+    // injections and emitting work on the decompiled type alone and run
+    // concurrently.
+    private static final Object DECOMPILE_LOCK = new Object();
+
+    private final boolean partial;
+    private final boolean bytecode;
+
+    /**
+     * @param partial Whether only the targeted methods of a class should be
+     *     decompiled, with everything else copied through byte for byte
+     * @param bytecode Whether targets simple enough to be applied directly to
+     *     the method's instructions should skip decompilation entirely, only
+     *     used in partial mode
+     */
+    public TypeTransformer(boolean partial, boolean bytecode) {
+        this.partial = partial;
+        this.bytecode = bytecode;
+    }
+
+    public boolean isPartial() {
+        return this.partial;
+    }
+
+    /**
+     * Gets whether the bytecode backend is used, which is only the case in
+     * partial mode.
+     */
+    public boolean isBytecode() {
+        return this.partial && this.bytecode;
+    }
+
+    public byte[] transform(TypeInjector injection, byte[] data) throws IOException {
+        return transform(injection, data, new TransformRecord());
+    }
+
+    /**
+     * Transforms the given class, adding the time spent in each phase to the
+     * given record.
+     */
+    public byte[] transform(TypeInjector injection, byte[] data, TransformRecord record) throws IOException {
+        if (this.partial) {
+            return transformPartial(injection, data, record);
+        }
+        return transformFull(injection, data, record);
+    }
+
+    private byte[] transformFull(TypeInjector injection, byte[] data, TransformRecord record) throws IOException {
+        Map<String, InjectionTarget> targets = injection.getTargets();
+        ClassReader reader = new ClassReader(data);
+        Map<String, AnchorScanner> scanners = new HashMap<>();
+        reader.accept(new ClassVisitor(Opcodes.ASM5) {
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                String key = name + desc;
+                if (!targets.containsKey(key)) {
+                    return null;
+                }
+                AnchorScanner scanner = new AnchorScanner(null);
+                scanners.put(key, scanner);
+                return scanner;
+            }
+
+        }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        checkAnchors(reader.getClassName(), targets, scanners);
+
+        TypeEntry type = decompile(data, record);
+        injection.apply(type, record);
+        return emit(type, record);
+    }
+
+    private byte[] transformPartial(TypeInjector injection, byte[] data, TransformRecord record) throws IOException {
+        Map<String, InjectionTarget> targets = injection.getTargets();
+        ClassReader reader = new ClassReader(data);
+        Map<String, MethodNode> replacements = new HashMap<>();
+
+        if (this.bytecode) {
+            List<MethodNode> candidates = new ArrayList<>();
+            reader.accept(new ClassVisitor(Opcodes.ASM5) {
+
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                    InjectionTarget target = targets.get(name + desc);
+                    if (target == null || !target.hasBytecodeInjections()) {
+                        return null;
+                    }
+                    MethodNode mth = new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions);
+                    candidates.add(mth);
+                    return mth;
+                }
+
+            }, 0);
+            for (MethodNode mth : candidates) {
+                String key = mth.name + mth.desc;
+                InjectionTarget target = targets.get(key);
+                Object event = TransformEvents.beginTarget();
+                long bytecode = record.getNanos(Phase.BYTECODE);
+                long start = record.start();
+                boolean applied = target.applyBytecode(reader.getClassName(), mth);
+                record.end(Phase.BYTECODE, start);
+                if (applied) {
+                    replacements.put(key, mth);
+                    // Locating and applying are not separate phases here, so
+                    // the whole time is reported as bytecode time
+                    TransformEvents.commitTarget(event, injection.getTarget(), key, "bytecode", target.getInjections().size(), target.getModifierTypes(),
+                            0, 0, record.getNanos(Phase.BYTECODE) - bytecode);
+                }
+            }
+        }
+
+        // Strip every method without a remaining target before handing the
+        // class to the decompiler. Synthetic methods are kept as lambda bodies
+        // are resolved from them when decompiling the methods that use them.
+        // The anchors of the remaining targets are collected on the way
+        // through so that a target which cannot match fails before the
+        // decompiler is ever run.
+        Map<String, AnchorScanner> scanners = new HashMap<>();
+        ClassWriter stripped = new ClassWriter(0);
+        reader.accept(new ClassVisitor(Opcodes.ASM5, stripped) {
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                String key = name + desc;
+                if (targets.containsKey(key) && !replacements.containsKey(key)) {
+                    AnchorScanner scanner = new AnchorScanner(super.visitMethod(access, name, desc, signature, exceptions));
+                    scanners.put(key, scanner);
+                    return scanner;
+                } else if ((access & Opcodes.ACC_SYNTHETIC) == 0) {
+                    return null;
+                }
+                return super.visitMethod(access, name, desc, signature, exceptions);
+            }
+
+        }, 0);
+
+        if (!scanners.isEmpty()) {
+            checkAnchors(reader.getClassName(), targets, scanners);
+            TypeEntry type = decompile(stripped.toByteArray(), record);
+            injection.apply(type, record);
+            ClassNode emitted = new ClassNode();
+            new ClassReader(emit(type, record)).accept(emitted, 0);
+            for (MethodNode mth : emitted.methods) {
+                String key = mth.name + mth.desc;
+                if (targets.containsKey(key) && !replacements.containsKey(key)) {
+                    replacements.put(key, mth);
+                }
+            }
+        }
+        if (replacements.isEmpty()) {
+            return data;
+        }
+
+        // Passing the reader to the writer lets it copy the constant pool and
+        // every method we do not replace without parsing them.
+        ClassWriter writer = new ClassWriter(reader, 0);
+        reader.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                MethodNode replacement = replacements.get(name + desc);
+                if (replacement != null) {
+                    replacement.accept(this.cv);
+                    return null;
+                }
+                return super.visitMethod(access, name, desc, signature, exceptions);
+            }
+
+        }, 0);
+        return writer.toByteArray();
+    }
+
+    private static void checkAnchors(String owner, Map<String, InjectionTarget> targets, Map<String, AnchorScanner> scanners) {
+        for (Map.Entry<String, AnchorScanner> e : scanners.entrySet()) {
+            targets.get(e.getKey()).checkAnchors(owner, e.getValue().getAnchors());
+        }
+    }
+
+    private static TypeEntry decompile(byte[] data, TransformRecord record) throws IOException {
+        // Each target is decompiled into its own source set rather than the
+        // long lived injector source set, so that the target's AST can be
+        // collected as soon as it has been emitted.
+        SourceSet scope = new SourceSet();
+        synchronized (DECOMPILE_LOCK) {
+            long start = record.start();
+            TypeEntry type = Decompilers.JAVA.decompile(new ByteArrayInputStream(data), scope);
+            Decompilers.JAVA.flushTasks();
+            record.end(Phase.DECOMPILE, start);
+            return type;
+        }
+    }
+
+    private static byte[] emit(TypeEntry type, TransformRecord record) {
+        long start = record.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BytecodeEmitterContext ctx = new BytecodeEmitterContext(out);
+        Emitters.BYTECODE.emit(ctx, type);
+        record.end(Phase.EMIT, start);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector;
+
+import com.voxelgenesis.injector.cache.TransformCache;
+import com.voxelgenesis.injector.target.TypeInjector;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.spongepowered.despector.ast.SourceSet;
+import org.spongepowered.despector.ast.type.TypeEntry;
+import org.spongepowered.despector.decompiler.Decompilers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates target and injector classes for the tests.
+ *
+ * <p>A target has a static method {@link #TARGET_METHOD} which prints
+ * {@code before}, flushes {@code System.out} and prints {@code after}, and
+ * another method which is never targeted. An injector inserts a print of
+ * {@code injected} before the flush, which is simple enough for the bytecode
+ * backend unless it is given {@link #AST_MATCHER}.</p>
+ */
+public final class TestClasses {
+
+    public static final String TARGET_METHOD = "run";
+    public static final String TARGET_KEY = "run()V";
+    public static final String MATCHER = "$$; java/lang/System.out.flush();";
+    // Inserts at the same place, but is not simple enough for the bytecode
+    // backend
+    public static final String AST_MATCHER = "$$; java/lang/System.out.println(\"after\");";
+
+    private static final Object DECOMPILE_LOCK = new Object();
+
+    public static byte[] target(String name) {
+        return target(name, 1);
+    }
+
+    /**
+     * Generates a target which flushes {@code System.out} the given number
+     * of times in a row, each of which the injectors match.
+     */
+    public static byte[] target(String name, int flushes) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name.replace('.', '/'), null, "java/lang/Object", null);
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, TARGET_METHOD, "()V", null, null);
+        mv.visitCode();
+        Label start = new Label();
+        mv.visitLabel(start);
+        mv.visitLdcInsn("before");
+        mv.visitVarInsn(Opcodes.ASTORE, 0);
+        println(mv, 0);
+        for (int i = 0; i < flushes; i++) {
+            mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "flush", "()V", false);
+        }
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        mv.visitLdcInsn("after");
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        Label end = new Label();
+        mv.visitLabel(end);
+        mv.visitLocalVariable("greeting", "Ljava/lang/String;", null, start, end, 0);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        MethodVisitor other = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "other", "()V", null, null);
+        other.visitCode();
+        other.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        other.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "flush", "()V", false);
+        other.visitInsn(Opcodes.RETURN);
+        other.visitMaxs(0, 0);
+        other.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generates an injector of the given target.
+     *
+     * @param local Whether the injected method takes the target's local
+     *     {@code greeting} as a parameter bound with {@link Local}
+     */
+    public static byte[] injector(String name, String target, boolean local) {
+        return injector(name, target, MATCHER, local);
+    }
+
+    public static byte[] injector(String name, String target, String matcher, boolean local) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name.replace('.', '/'), null, "java/lang/Object", null);
+        AnnotationVisitor injector = cw.visitAnnotation("Lcom/voxelgenesis/injector/Injector;", true);
+        injector.visit("value", Type.getObjectType(target.replace('.', '/')));
+        injector.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "inject", local ? "(Ljava/lang/String;)V" : "()V", null, null);
+        AnnotationVisitor inject = mv.visitAnnotation("Lcom/voxelgenesis/injector/Inject;", true);
+        inject.visit("target", TARGET_KEY);
+        inject.visit("matcher", matcher);
+        inject.visitEnd();
+        if (local) {
+            AnnotationVisitor param = mv.visitParameterAnnotation(0, "Lcom/voxelgenesis/injector/Local;", true);
+            param.visit("value", "greeting");
+            param.visitEnd();
+        }
+        int slot = local ? 1 : 0;
+        mv.visitCode();
+        Label start = new Label();
+        mv.visitLabel(start);
+        mv.visitLdcInsn("injected");
+        mv.visitVarInsn(Opcodes.ASTORE, slot);
+        println(mv, slot);
+        mv.visitInsn(Opcodes.RETURN);
+        Label end = new Label();
+        mv.visitLabel(end);
+        if (local) {
+            mv.visitLocalVariable("greeting", "Ljava/lang/String;", null, start, end, 0);
+        }
+        mv.visitLocalVariable("msg", "Ljava/lang/String;", null, start, end, slot);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generates an injector which prints {@code injected} from a lambda,
+     * whose body is a private synthetic method of the injector.
+     */
+    public static byte[] lambdaInjector(String name, String target) {
+        String owner = name.replace('.', '/');
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, owner, null, "java/lang/Object", null);
+        AnnotationVisitor injector = cw.visitAnnotation("Lcom/voxelgenesis/injector/Injector;", true);
+        injector.visit("value", Type.getObjectType(target.replace('.', '/')));
+        injector.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "inject", "()V", null, null);
+        AnnotationVisitor inject = mv.visitAnnotation("Lcom/voxelgenesis/injector/Inject;", true);
+        inject.visit("target", TARGET_KEY);
+        inject.visit("matcher", MATCHER);
+        inject.visitEnd();
+        mv.visitCode();
+        Handle metafactory = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;"
+                        + "Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;");
+        mv.visitInvokeDynamicInsn("run", "()Ljava/lang/Runnable;", metafactory, Type.getType("()V"),
+                new Handle(Opcodes.H_INVOKESTATIC, owner, "lambda$inject$0", "()V"), Type.getType("()V"));
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/lang/Runnable", "run", "()V", true);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        MethodVisitor lambda = cw.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, "lambda$inject$0", "()V", null, null);
+        lambda.visitCode();
+        lambda.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        lambda.visitLdcInsn("injected");
+        lambda.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        lambda.visitInsn(Opcodes.RETURN);
+        lambda.visitMaxs(0, 0);
+        lambda.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void println(MethodVisitor mv, int local) {
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        mv.visitVarInsn(Opcodes.ALOAD, local);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+    }
+
+    /**
+     * Creates a lazy type injector the same way registering the injector
+     * with the injection manager would, without registering it.
+     */
+    public static TypeInjector typeInjector(String target, byte[] injector) {
+        return new TypeInjector(target, injector, TransformCache.hash(injector), null, TestClasses::decompileInjector);
+    }
+
+    /**
+     * Decompiles an injector into a source set of its own.
+     */
+    public static TypeEntry decompileInjector(byte[] data) {
+        synchronized (DECOMPILE_LOCK) {
+            try {
+                TypeEntry type = Decompilers.WILD.decompile(new ByteArrayInputStream(data), new SourceSet());
+                Decompilers.WILD.flushTasks();
+                return type;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Loads the given class in a loader of its own and runs its target
+     * method, returning the lines it printed.
+     */
+    public static List<String> run(String name, byte[] data) throws ReflectiveOperationException {
+        Class<?> type = new ClassLoader(TestClasses.class.getClassLoader()) {
+
+            Class<?> define() {
+                return defineClass(name, data, 0, data.length);
+            }
+
+        }.define();
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            type.getMethod(TARGET_METHOD).invoke(null);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            System.setOut(out);
+        }
+        return Arrays.asList(captured.toString().split("\\R"));
+    }
+
+    private TestClasses() {
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.launch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import com.voxelgenesis.injector.InjectionManager;
+import com.voxelgenesis.injector.TestClasses;
+import com.voxelgenesis.injector.config.ConfigManager;
+import com.voxelgenesis.injector.config.InjectorConfig;
+import com.voxelgenesis.injector.transform.TypeTransformer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many threads through the transformer at once over a mix of targets
+ * and classes which are not targets, and checks every result against
+ * transforming each class once on a single thread.
+ */
+public class InjectorTransformerStressTest {
+
+    private static final String PACKAGE = "com.voxelgenesis.injector.generated.stress.";
+    private static final int TARGETS = 12;
+    private static final int OTHERS = 12;
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 3;
+
+    private static final Map<String, byte[]> classes = new HashMap<>();
+    private static final Map<String, byte[]> expected = new HashMap<>();
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        // Every load runs the transformer rather than being served from a cache
+        InjectorConfig config = ConfigManager.getConfig();
+        config.cache.enabled = false;
+        config.cache.memory_enabled = false;
+
+        TypeTransformer reference = new TypeTransformer(config.transform.partial_decompile, config.transform.bytecode_backend);
+        for (int i = 0; i < TARGETS; i++) {
+            String target = PACKAGE + "Target" + i;
+            // Half of the targets are left to the AST backend
+            String matcher = i % 2 == 0 ? TestClasses.MATCHER : TestClasses.AST_MATCHER;
+            byte[] injector = TestClasses.injector(target + "Injector", target, matcher, false);
+            InjectionManager.get().addInjector(target + "Injector", injector);
+            byte[] data = TestClasses.target(target);
+            classes.put(target, data);
+            expected.put(target, reference.transform(TestClasses.typeInjector(target, injector), data));
+        }
+        for (int i = 0; i < OTHERS; i++) {
+            String other = PACKAGE + "Other" + i;
+            byte[] data = TestClasses.target(other);
+            classes.put(other, data);
+            expected.put(other, data);
+        }
+    }
+
+    @Test
+    public void testConcurrentTransforms() throws Exception {
+        InjectorTransformer transformer = new InjectorTransformer();
+        List<String> names = new ArrayList<>(classes.keySet());
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Map<String, List<byte[]>>>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                long seed = t;
+                results.add(pool.submit(() -> {
+                    List<String> order = new ArrayList<>(names);
+                    Random random = new Random(seed);
+                    Map<String, List<byte[]>> outputs = new HashMap<>();
+                    barrier.await();
+                    for (int r = 0; r < ROUNDS; r++) {
+                        Collections.shuffle(order, random);
+                        for (String name : order) {
+                            // Each load is given its own copy, as the class
+                            // loader would
+                            byte[] data = classes.get(name).clone();
+                            byte[] output = transformer.transform(name, name, data);
+                            outputs.computeIfAbsent(name, k -> new ArrayList<>()).add(output);
+                        }
+                    }
+                    return outputs;
+                }));
+            }
+            for (Future<Map<String, List<byte[]>>> result : results) {
+                // Rethrows anything thrown on the thread
+                for (Map.Entry<String, List<byte[]>> e : result.get().entrySet()) {
+                    for (byte[] output : e.getValue()) {
+                        assertArrayEquals(e.getKey(), expected.get(e.getKey()), output);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testReferenceTransformed() {
+        for (int i = 0; i < TARGETS; i++) {
+            String target = PACKAGE + "Target" + i;
+            assertFalse(target, Arrays.equals(classes.get(target), expected.get(target)));
+        }
+        for (int i = 0; i < OTHERS; i++) {
+            String other = PACKAGE + "Other" + i;
+            assertSame(classes.get(other), expected.get(other));
+        }
+    }
+
+}
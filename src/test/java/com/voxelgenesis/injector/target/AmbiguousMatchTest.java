@@ -0,0 +1,66 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.voxelgenesis.injector.TestClasses;
+import com.voxelgenesis.injector.transform.TypeTransformer;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * A point matching twice in the same block is rejected rather than applied
+ * to the first match, by both backends.
+ */
+public class AmbiguousMatchTest {
+
+    private static final String TARGET = "com.voxelgenesis.injector.generated.AmbiguousTarget";
+    private static final String INJECTOR = "com.voxelgenesis.injector.generated.AmbiguousTargetInjector";
+
+    @Test
+    public void testAstRejectsRepeatedMatch() throws IOException {
+        assertAmbiguous(new TypeTransformer(true, false));
+    }
+
+    @Test
+    public void testBytecodeRejectsRepeatedMatch() throws IOException {
+        // The bytecode backend leaves the ambiguous anchor to the AST backend
+        assertAmbiguous(new TypeTransformer(true, true));
+    }
+
+    private static void assertAmbiguous(TypeTransformer transformer) throws IOException {
+        byte[] injector = TestClasses.injector(INJECTOR, TARGET, false);
+        try {
+            transformer.transform(TestClasses.typeInjector(TARGET, injector), TestClasses.target(TARGET, 2));
+            fail("Expected the repeated match to be ambiguous");
+        } catch (IllegalStateException e) {
+            assertEquals("Ambiguous match", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.voxelgenesis.injector.TestClasses;
+import org.junit.Test;
+
+public class TypeInjectorTest {
+
+    private static final String TARGET = "com.voxelgenesis.injector.generated.MergeTarget";
+
+    @Test
+    public void testMergeAfterBuilt() {
+        TypeInjector first = TestClasses.typeInjector(TARGET, TestClasses.injector(TARGET + "FirstInjector", TARGET, false));
+        TypeInjector second = TestClasses.typeInjector(TARGET, TestClasses.injector(TARGET + "SecondInjector", TARGET, TestClasses.AST_MATCHER, false));
+        assertEquals(1, first.getTargets().get(TestClasses.TARGET_KEY).getInjections().size());
+        assertTrue(first.isBuilt());
+
+        TypeInjector merged = first.merge(second);
+        assertFalse(merged.isBuilt());
+        assertEquals(2, merged.getInjectors().size());
+        assertEquals(2, merged.getTargets().get(TestClasses.TARGET_KEY).getInjections().size());
+        // Merging leaves both injectors as they were
+        assertEquals(1, first.getInjectors().size());
+        assertEquals(1, second.getInjectors().size());
+    }
+
+    @Test
+    public void testMergeWithItself() {
+        // As when an injector is registered both on its own and by a scan of
+        // its package
+        byte[] injector = TestClasses.injector(TARGET + "FirstInjector", TARGET, false);
+        TypeInjector first = TestClasses.typeInjector(TARGET, injector);
+        TypeInjector merged = first.merge(TestClasses.typeInjector(TARGET, injector));
+        assertEquals(first.getFingerprint(), merged.getFingerprint());
+        assertEquals(1, merged.getInjectors().size());
+        assertEquals(1, merged.getTargets().get(TestClasses.TARGET_KEY).getInjections().size());
+        assertEquals(1, first.merge(first).getTargets().get(TestClasses.TARGET_KEY).getInjections().size());
+    }
+
+    @Test
+    public void testMergeIndependentOfOrder() {
+        TypeInjector first = TestClasses.typeInjector(TARGET, TestClasses.injector(TARGET + "FirstInjector", TARGET, false));
+        TypeInjector second = TestClasses.typeInjector(TARGET, TestClasses.injector(TARGET + "SecondInjector", TARGET, TestClasses.AST_MATCHER, false));
+        assertEquals(first.merge(second).getFingerprint(), second.merge(first).getFingerprint());
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.voxelgenesis.injector.TestClasses;
+import com.voxelgenesis.injector.metrics.Phase;
+import com.voxelgenesis.injector.metrics.TransformRecord;
+import com.voxelgenesis.injector.target.TypeInjector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class BackendEquivalenceTest {
+
+    private static final String TARGET = "com.voxelgenesis.injector.generated.BackendTarget";
+    private static final String INJECTOR = "com.voxelgenesis.injector.generated.BackendTargetInjector";
+
+    @Test
+    public void testBackendsAgree() throws Exception {
+        byte[] target = TestClasses.target(TARGET);
+        byte[] injector = TestClasses.injector(INJECTOR, TARGET, false);
+
+        TypeInjector bytecode_injection = TestClasses.typeInjector(TARGET, injector);
+        assertTrue(bytecode_injection.getTargets().get(TestClasses.TARGET_KEY).hasBytecodeInjections());
+        TransformRecord bytecode_record = new TransformRecord();
+        byte[] bytecode = new TypeTransformer(true, true).transform(bytecode_injection, target, bytecode_record);
+        // Applied without ever decompiling the target
+        assertEquals(0, bytecode_record.getNanos(Phase.DECOMPILE));
+
+        TransformRecord ast_record = new TransformRecord();
+        byte[] ast = new TypeTransformer(true, false).transform(TestClasses.typeInjector(TARGET, injector), target, ast_record);
+        assertTrue(ast_record.getNanos(Phase.DECOMPILE) > 0);
+
+        List<String> expected = Arrays.asList("before", "injected", "after");
+        assertEquals(expected, TestClasses.run(TARGET, bytecode));
+        assertEquals(expected, TestClasses.run(TARGET, ast));
+    }
+
+    @Test
+    public void testLambdaLeftToAst() {
+        // The lambda's body is a private method of the injector, which the
+        // target could not link against if the body were copied as is
+        byte[] injector = TestClasses.lambdaInjector(INJECTOR, TARGET);
+        TypeInjector injection = TestClasses.typeInjector(TARGET, injector);
+        assertFalse(injection.getTargets().get(TestClasses.TARGET_KEY).hasBytecodeInjections());
+    }
+
+    @Test
+    public void testLocalsLeftToAst() {
+        byte[] injector = TestClasses.injector(INJECTOR, TARGET, true);
+        TypeInjector injection = TestClasses.typeInjector(TARGET, injector);
+        assertFalse(injection.getTargets().get(TestClasses.TARGET_KEY).hasBytecodeInjections());
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Despector <https://despector.voxelgenesis.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.voxelgenesis.injector.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.voxelgenesis.injector.TestClasses;
+import com.voxelgenesis.injector.cache.MemoryCache;
+import com.voxelgenesis.injector.cache.TransformCache;
+import com.voxelgenesis.injector.config.InjectorConfig;
+import com.voxelgenesis.injector.metrics.TransformRecord;
+import com.voxelgenesis.injector.target.TypeInjector;
+import org.junit.Test;
+import org.spongepowered.despector.ast.SourceSet;
+import org.spongepowered.despector.ast.type.TypeEntry;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Transforms a growing number of targets and checks that what is retained
+ * afterwards stays bounded.
+ */
+public class TransformHeapTest {
+
+    private static final String PACKAGE = "com.voxelgenesis.injector.generated.heap.";
+    private static final int[] BATCHES = {8, 32, 128};
+
+    @Test
+    public void testMemoryCacheBounded() {
+        InjectorConfig config = new InjectorConfig();
+        config.cache.enabled = false;
+
+        byte[] sample = transform(new TypeTransformer(true, true), "Sample");
+        // Room for a handful of classes, far fewer than are transformed
+        long max_bytes = sample.length * 8L;
+        MemoryCache cache = new MemoryCache(max_bytes);
+        TransformPipeline pipeline = new TransformPipeline(config, cache);
+
+        int count = 0;
+        for (int batch : BATCHES) {
+            for (int i = 0; i < batch; i++) {
+                String target = PACKAGE + "Cached" + count++;
+                byte[] injector = TestClasses.injector(target + "Injector", target, false);
+                byte[] data = TestClasses.target(target);
+                assertFalse(Arrays.equals(data, pipeline.transform(target, TestClasses.typeInjector(target, injector), data)));
+            }
+            assertTrue(cache.weight() + " > " + max_bytes, cache.weight() <= max_bytes);
+        }
+        assertTrue(cache.getStats().evictionCount() > 0);
+    }
+
+    @Test
+    public void testDecompiledTargetsReleased() throws InterruptedException {
+        // The AST backend, so that every target is decompiled
+        TypeTransformer transformer = new TypeTransformer(true, false);
+        int count = 0;
+        for (int batch : BATCHES) {
+            List<WeakReference<Object>> decompiled = new ArrayList<>();
+            for (int i = 0; i < batch; i++) {
+                String target = PACKAGE + "Decompiled" + count++;
+                byte[] injector = TestClasses.injector(target + "Injector", target, TestClasses.AST_MATCHER, false);
+                TrackingInjector injection = new TrackingInjector(target, injector, decompiled);
+                byte[] data = TestClasses.target(target);
+                assertFalse(Arrays.equals(data, transformer.transform(injection, data)));
+            }
+            assertEquals(batch * 2, decompiled.size());
+            assertTrue("Decompiled targets retained after transforming", awaitCleared(decompiled));
+        }
+    }
+
+    private static byte[] transform(TypeTransformer transformer, String name) {
+        String target = PACKAGE + name;
+        byte[] injector = TestClasses.injector(target + "Injector", target, false);
+        try {
+            return transformer.transform(TestClasses.typeInjector(target, injector), TestClasses.target(target));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean awaitCleared(List<WeakReference<Object>> refs) throws InterruptedException {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            System.gc();
+            boolean cleared = true;
+            for (WeakReference<Object> ref : refs) {
+                if (ref.get() != null) {
+                    cleared = false;
+                    break;
+                }
+            }
+            if (cleared) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    /**
+     * Records weak references to every target type it is applied to and to
+     * the source set it was decompiled into.
+     */
+    private static class TrackingInjector extends TypeInjector {
+
+        private final List<WeakReference<Object>> decompiled;
+
+        TrackingInjector(String target, byte[] injector, List<WeakReference<Object>> decompiled) {
+            super(target, injector, TransformCache.hash(injector), null, TestClasses::decompileInjector);
+            this.decompiled = decompiled;
+        }
+
+        @Override
+        public void apply(TypeEntry type, TransformRecord record) {
+            SourceSet source = type.getSource();
+            this.decompiled.add(new WeakReference<>(type));
+            this.decompiled.add(new WeakReference<>(source));
+            super.apply(type, record);
+        }
+
+    }
+
+}